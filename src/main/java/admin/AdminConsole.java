@@ -3,6 +3,7 @@ package admin;
 import cli.Command;
 import cli.Shell;
 import controller.IAdminConsole;
+import controller.ILogStream;
 import model.ComputationRequestInfo;
 import util.Config;
 
@@ -13,8 +14,13 @@ import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.security.Key;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  *  The admin console reads the properties to obtain the information where the RMI registry is located. 
@@ -23,6 +29,8 @@ import java.util.List;
  */
 public class AdminConsole implements IAdminConsole, Runnable {
 
+	private static final int LOG_CHUNK = 500;
+
 	private Config config;
 	private String bindingName;
 	private String controllerHost;
@@ -107,12 +115,60 @@ public class AdminConsole implements IAdminConsole, Runnable {
 		return adminService.subscribe(username, credits, callback);
 	}
 
+	/**
+	 * Prints the logs of all nodes, ordered by time, while they are received from the cloud controller in chunks.
+	 * @throws RemoteException
+	 */
 	@Command(value="getLogs")
+	public Iterable<ComputationRequestInfo> printLogs() throws RemoteException {
+		final ILogStream logStream = streamLogs();
+		return new Iterable<ComputationRequestInfo>() {
+			@Override
+			public Iterator<ComputationRequestInfo> iterator() {
+				return new LogStreamIterator(logStream);
+			}
+		};
+	}
+
 	@Override
 	public List<ComputationRequestInfo> getLogs() throws RemoteException {
 		return adminService.getLogs();
 	}
 
+	@Override
+	public ILogStream streamLogs() throws RemoteException {
+		return adminService.streamLogs();
+	}
+
+	/**
+	 * Shows a page of the requests which were handled by a single node in a time range.
+	 * @param tcpPort the TCP port of the node
+	 * @param from the earliest time as yyyyMMdd_HHmmss, or - for the beginning of the log
+	 * @param to the latest time as yyyyMMdd_HHmmss (exclusive), or - for the end of the log
+	 * @param offset the number of requests of the time range which are skipped
+	 * @param limit the maximum number of shown requests
+	 * @throws RemoteException
+	 */
+	@Command(value="getLogPage")
+	public List<ComputationRequestInfo> getLogPage(int tcpPort, String from, String to, int offset, int limit) throws RemoteException {
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss");
+		try {
+			long fromTime = from.equals("-") ? Long.MIN_VALUE : sdf.parse(from).getTime();
+			long toTime = to.equals("-") ? Long.MAX_VALUE : sdf.parse(to).getTime();
+			return getLogs(tcpPort, fromTime, toTime, offset, limit);
+		}
+		catch (ParseException e) {
+			List<ComputationRequestInfo> error = new ArrayList<ComputationRequestInfo>();
+			error.add(new ComputationRequestInfo("Invalid time, expected yyyyMMdd_HHmmss or -"));
+			return error;
+		}
+	}
+
+	@Override
+	public List<ComputationRequestInfo> getLogs(int tcpPort, long from, long to, int offset, int limit) throws RemoteException {
+		return adminService.getLogs(tcpPort, from, to, offset, limit);
+	}
+
 	@Command(value="statistics")
 	@Override
 	public LinkedHashMap<Character, Long> statistics() throws RemoteException {
@@ -130,6 +186,61 @@ public class AdminConsole implements IAdminConsole, Runnable {
 		// We don't have to implement this method.
 	}
 
+	/**
+	 * Fetches the next chunk of an {@link ILogStream} whenever the previous one has been consumed.
+	 */
+	private static class LogStreamIterator implements Iterator<ComputationRequestInfo> {
+
+		private ILogStream logStream;
+		private Iterator<ComputationRequestInfo> chunk;
+		private boolean first = true;
+		private boolean finished;
+
+		public LogStreamIterator(ILogStream logStream) {
+			this.logStream = logStream;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while(!finished && (chunk == null || !chunk.hasNext())){
+				List<ComputationRequestInfo> next;
+				try {
+					next = logStream.next(LOG_CHUNK);
+				}
+				catch (RemoteException e) {
+					next = new ArrayList<ComputationRequestInfo>();
+					next.add(new ComputationRequestInfo("Could not receive the logs: "+e.getMessage()));
+					finished = true;
+				}
+				if(next.isEmpty()){
+					finished = true;
+					if(first){
+						next.add(new ComputationRequestInfo("No logs found!"));
+					}
+				}
+				first = false;
+				chunk = next.iterator();
+				if(chunk.hasNext()){
+					return true;
+				}
+			}
+			return chunk != null && chunk.hasNext();
+		}
+
+		@Override
+		public ComputationRequestInfo next() {
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			return chunk.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 	/**
 	 * @param args
 	 *            the first argument is the name of the {@link AdminConsole}
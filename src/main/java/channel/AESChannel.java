@@ -12,38 +12,47 @@ import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 
+import util.CryptoPool;
+
 /**
  * Messages that are sent are encrypted with the AES algorithm, messages that are received are decrypted back.
+ * The cipher is taken from the {@link CryptoPool}, which only initializes it again if the thread last used it with another key or in the other direction.
  */
 public class AESChannel extends ChannelDecorator {
 	
 	private final String algorithm = "AES/CTR/NoPadding";
-	private Cipher encryption;
-	private Cipher decryption;
+	private SecretKey secretKey;
+	private IvParameterSpec ivParameterSpec;
 	
 	public AESChannel(Channel channel,  SecretKey secretKey, byte[] ivParameter) {
 		super(channel);
-		IvParameterSpec ivParameterSpec = new IvParameterSpec(ivParameter);
+		this.secretKey = secretKey;
+		this.ivParameterSpec = new IvParameterSpec(ivParameter);
+		cipher(Cipher.ENCRYPT_MODE);
+	}
+
+	/**
+	 * @return the cipher of the calling thread, initialized with the key and the initialization vector, or null if they are not supported
+	 */
+	private Cipher cipher(int mode) {
 		try {
-			encryption = Cipher.getInstance(algorithm);
-			encryption.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterSpec);
-			decryption = Cipher.getInstance(algorithm);
-			decryption.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
-			} catch (InvalidKeyException e) {
-				System.err.println("Invalid Key: please check the length and encoding of the key.");
-			} catch (InvalidAlgorithmParameterException e) {
-				System.err.println("Invalid or inappropriate algorithm parameters.");
-			} catch (NoSuchAlgorithmException e) {
-				System.err.println("Algorithm" + algorithm + "not found.");
-			} catch (NoSuchPaddingException e) {
-				System.err.println("Padding mechanism not available in the environment.");
-			}
+			return CryptoPool.getCipher(algorithm, mode, secretKey, ivParameterSpec);
+		} catch (InvalidKeyException e) {
+			System.err.println("Invalid Key: please check the length and encoding of the key.");
+		} catch (InvalidAlgorithmParameterException e) {
+			System.err.println("Invalid or inappropriate algorithm parameters.");
+		} catch (NoSuchAlgorithmException e) {
+			System.err.println("Algorithm" + algorithm + "not found.");
+		} catch (NoSuchPaddingException e) {
+			System.err.println("Padding mechanism not available in the environment.");
+		}
+		return null;
 	}
 
 	@Override
 	public void write(byte[] message) {
 		try {
-			channel.write(encryption.doFinal(message));
+			channel.write(cipher(Cipher.ENCRYPT_MODE).doFinal(message));
 		} catch (IllegalBlockSizeException e) {
 			System.err.println("Input data is not a multiple of the block-size.");
 		} catch (BadPaddingException e) {
@@ -54,7 +63,7 @@ public class AESChannel extends ChannelDecorator {
 	@Override
 	public byte[] read() throws IOException {
 		try {
-			return decryption.doFinal(channel.read());
+			return cipher(Cipher.DECRYPT_MODE).doFinal(channel.read());
 		} catch (IllegalBlockSizeException e) {
 			System.err.println("Input data is not a multiple of the block-size.");
 		} catch (BadPaddingException e) {
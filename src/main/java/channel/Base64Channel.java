@@ -23,6 +23,14 @@ public class Base64Channel extends ChannelDecorator {
 		return Base64.decode(channel.read());
 	}
 
+	/**
+	 * Base64 never contains line breaks, so any message can be sent.
+	 */
+	@Override
+	public boolean isBinary() {
+		return true;
+	}
+
 	@Override
 	public void close() throws IOException {
 		channel.close();
@@ -0,0 +1,32 @@
+package channel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Counterpart of {@link Channel} for messages in {@link ByteBuffer}s, which lets a message pass through the decorators without being copied into new arrays.
+ * A message may be written from several buffers at once (gather write), and a received message stays in a buffer owned by the channel.
+ */
+public interface BufferChannel {
+
+	/**
+	 * Sends the remaining bytes of the given buffers as a single message. The positions of the buffers are advanced.
+	 * @param message the buffers of the message
+	 * @param offset the index of the first buffer
+	 * @param length the number of buffers
+	 * @throws IOException
+	 */
+	public void write(ByteBuffer[] message, int offset, int length) throws IOException;
+
+	/**
+	 * @return the next message between position and limit of a buffer owned by the channel, which is only valid until the next read
+	 * @throws IOException
+	 */
+	public ByteBuffer read() throws IOException;
+
+	/**
+	 * Closes the connection and returns the buffers of the channel to their pool.
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
+}
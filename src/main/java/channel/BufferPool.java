@@ -0,0 +1,57 @@
+package channel;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct buffers of the same size, which are shared by the {@link BufferChannel}s of a process.
+ * A channel takes its buffers when it is opened and returns them when it is closed, so sending and receiving messages does not allocate buffers.
+ * At most maxPooled buffers are kept, further returned buffers are left to the garbage collector.
+ */
+public class BufferPool {
+
+	private int bufferSize;
+	private int maxPooled;
+	private ConcurrentLinkedQueue<ByteBuffer> buffers;
+	private AtomicInteger pooled;
+
+	public BufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+		this.buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+		this.pooled = new AtomicInteger();
+	}
+
+	/**
+	 * @return a cleared direct buffer of the size of the pool
+	 */
+	public ByteBuffer acquire(){
+		ByteBuffer buffer = buffers.poll();
+		if(buffer == null){
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool. Buffers which were not taken from a pool of this size are ignored.
+	 * @param buffer
+	 */
+	public void release(ByteBuffer buffer){
+		if(buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize){
+			return;
+		}
+		if(pooled.incrementAndGet()>maxPooled){
+			pooled.decrementAndGet();
+			return;
+		}
+		buffers.add(buffer);
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+}
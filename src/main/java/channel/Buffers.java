@@ -0,0 +1,73 @@
+package channel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conversion between the text messages of the cloud controller and the nodes and {@link ByteBuffer}s. The messages only consist of ASCII characters.
+ */
+public final class Buffers {
+
+	private Buffers() {}
+
+	/**
+	 * Writes a message into a buffer, without encoding it into a new array first.
+	 * @param message
+	 * @param buffer the buffer, which is cleared first
+	 * @return the flipped buffer, or a new heap buffer if the message does not fit into the given one
+	 */
+	public static ByteBuffer encode(String message, ByteBuffer buffer){
+		if(message.length()>buffer.capacity()){
+			buffer = ByteBuffer.allocate(message.length());
+		}
+		buffer.clear();
+		for(int i = 0; i<message.length(); i++){
+			char c = message.charAt(i);
+			buffer.put(c<0x80 ? (byte) c : (byte) '?');
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Splits a request into its fields, which are separated by whitespace, directly from the buffer. Unlike splitting the {@link #decode(ByteBuffer) decoded} message,
+	 * no copy of the whole message and no regular expression is needed, only the fields themselves are created.
+	 * @param buffer the message between position and limit, the position is advanced to the limit
+	 * @return the fields of the message, an empty array if it only consists of whitespace
+	 */
+	public static String[] split(ByteBuffer buffer){
+		List<String> fields = new ArrayList<String>();
+		char[] field = new char[buffer.remaining()];
+		int length = 0;
+		while(buffer.hasRemaining()){
+			char c = (char) (buffer.get() & 0xff);
+			if(Character.isWhitespace(c)){
+				if(length>0){
+					fields.add(new String(field, 0, length));
+					length = 0;
+				}
+			}
+			else{
+				field[length++] = c;
+			}
+		}
+		if(length>0){
+			fields.add(new String(field, 0, length));
+		}
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	/**
+	 * Creates the message as a String. This needs one intermediate copy of the message, which is only worth avoiding
+	 * for requests, see {@link #split(ByteBuffer) split}, since a response is passed on as a whole.
+	 * @param buffer the message between position and limit, the position is advanced to the limit
+	 * @return the message
+	 */
+	public static String decode(ByteBuffer buffer){
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+}
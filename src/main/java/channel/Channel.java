@@ -7,4 +7,9 @@ public interface Channel {
 	public void write(byte[] message);
 	public byte[] read() throws IOException;
 	public void close() throws IOException;
+
+	/**
+	 * @return true if messages may contain any bytes, false if they must not contain line breaks
+	 */
+	public boolean isBinary();
 }
@@ -12,4 +12,9 @@ public abstract class ChannelDecorator implements Channel {
 	
 	public abstract void write(byte[] message);
 	public abstract byte[] read() throws IOException;
+
+	@Override
+	public boolean isBinary(){
+		return channel.isBinary();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package channel;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * {@link BufferChannel} on a blocking {@link SocketChannel}, which uses the same frames as the {@link FramedChannel} (a 4 byte length followed by the message).
+ * The length and the buffers of a message are written with a single gather write, and messages are received into a direct buffer of a {@link BufferPool}.
+ * A message which does not fit into a pooled buffer is received into a larger buffer, which is kept until the channel is closed.
+ * <p>
+ * The read timeout of a socket does not apply to a {@link SocketChannel}. If a timeout is set with {@link #setTimeout(int) setTimeout},
+ * the channel is switched to non-blocking mode and waits for the socket with a {@link Selector} of its own.
+ */
+public class FramedBufferChannel implements BufferChannel {
+
+	private static final int MAX_GATHER = 8;
+
+	private SocketChannel socketChannel;
+	private BufferPool pool;
+	private ByteBuffer header;
+	private ByteBuffer frame;
+	private ByteBuffer[] gather;
+	private int timeout;
+	private Selector selector;
+	private SelectionKey key;
+
+	public FramedBufferChannel(SocketChannel socketChannel, BufferPool pool) {
+		this.socketChannel = socketChannel;
+		this.pool = pool;
+		this.header = ByteBuffer.allocateDirect(4);
+		this.frame = pool.acquire();
+		this.gather = new ByteBuffer[MAX_GATHER];
+	}
+
+	/**
+	 * Opens a framed channel on a new connection by sending the preamble of the {@link FramedChannel}.
+	 * @param socketChannel the connected, blocking socket channel
+	 * @param pool
+	 * @return the framed channel
+	 * @throws IOException
+	 */
+	public static FramedBufferChannel connect(SocketChannel socketChannel, BufferPool pool) throws IOException {
+		ByteBuffer preamble = ByteBuffer.allocate(1);
+		preamble.put((byte) FramedChannel.PREAMBLE);
+		preamble.flip();
+		while(preamble.hasRemaining()){
+			socketChannel.write(preamble);
+		}
+		return new FramedBufferChannel(socketChannel, pool);
+	}
+
+	/**
+	 * Limits the time a read or a write waits for the socket.
+	 * @param timeout the timeout in milliseconds, 0 to wait forever
+	 * @throws IOException
+	 */
+	public void setTimeout(int timeout) throws IOException {
+		this.timeout = timeout;
+		if(timeout>0 && selector == null){
+			socketChannel.configureBlocking(false);
+			selector = Selector.open();
+			key = socketChannel.register(selector, 0);
+		}
+	}
+
+	@Override
+	public synchronized void write(ByteBuffer[] message, int offset, int length) throws IOException {
+		if(length+1>gather.length){
+			gather = new ByteBuffer[length+1];
+		}
+		long size = 0;
+		for(int i = 0; i<length; i++){
+			gather[i+1] = message[offset+i];
+			size = size + message[offset+i].remaining();
+		}
+		if(size>FramedChannel.MAX_FRAME_LENGTH){
+			throw new IOException("Invalid frame length "+size);
+		}
+		header.clear();
+		header.putInt((int) size);
+		header.flip();
+		gather[0] = header;
+		long written = 0;
+		while(written<size+4){
+			long n = socketChannel.write(gather, 0, length+1);
+			if(n == 0){
+				await(SelectionKey.OP_WRITE);
+			}
+			written = written + n;
+		}
+		for(int i = 0; i<=length; i++){
+			gather[i] = null;
+		}
+	}
+
+	@Override
+	public ByteBuffer read() throws IOException {
+		header.clear();
+		fill(header);
+		int length = header.getInt(0);
+		if(length<0 || length>FramedChannel.MAX_FRAME_LENGTH){
+			throw new IOException("Invalid frame length "+length);
+		}
+		if(length>frame.capacity()){
+			pool.release(frame);
+			frame = ByteBuffer.allocateDirect(length);
+		}
+		frame.clear();
+		frame.limit(length);
+		fill(frame);
+		frame.flip();
+		return frame;
+	}
+
+	private void fill(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			int n = socketChannel.read(buffer);
+			if(n == -1){
+				throw new SocketException();
+			}
+			if(n == 0){
+				await(SelectionKey.OP_READ);
+			}
+		}
+	}
+
+	/**
+	 * Waits until the non-blocking socket is ready for the given operation.
+	 * @throws SocketTimeoutException if the timeout has passed
+	 */
+	private void await(int operation) throws IOException {
+		if(selector == null){
+			return;
+		}
+		key.interestOps(operation);
+		if(selector.select(timeout) == 0){
+			throw new SocketTimeoutException("The peer did not respond within "+timeout+" ms");
+		}
+		selector.selectedKeys().clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			socketChannel.close();
+			if(selector != null) selector.close();
+		}
+		finally {
+			ByteBuffer released = frame;
+			frame = ByteBuffer.allocate(0);
+			pool.release(released);
+		}
+	}
+}
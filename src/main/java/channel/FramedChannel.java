@@ -0,0 +1,132 @@
+package channel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+
+/**
+ * Binary transport, which sends every message as a frame of a 4 byte length followed by the raw bytes of the message.
+ * Unlike the line based {@link TcpChannel}, messages may contain any bytes, so encrypted messages do not have to be encoded in Base64.
+ * <p>
+ * The side which opens the connection announces framing by sending the {@link #PREAMBLE} byte first (see {@link #connect(Socket) connect}).
+ * Line based messages never start with that byte, so the accepting side can serve both kinds of peers, see {@link #accept(Socket) accept}.
+ * <p>
+ * The length of a frame is sent by a peer which may not be authenticated yet, so the buffer of a frame only grows with the bytes that actually arrived,
+ * starting with {@value #CHUNK} bytes. If a write fails, the channel is closed, so the next read fails as well.
+ */
+public class FramedChannel implements Channel {
+
+	public static final int PREAMBLE = 0x00;
+	public static final int MAX_FRAME_LENGTH = 1 << 20;
+	private static final int CHUNK = 8192;
+
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	public FramedChannel(InputStream in, OutputStream out) {
+		this.in = new DataInputStream(new BufferedInputStream(in));
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+	}
+
+	/**
+	 * Opens a framed channel on a new connection by sending the preamble.
+	 * @param socket the connected socket
+	 * @return the framed channel
+	 * @throws IOException
+	 */
+	public static FramedChannel connect(Socket socket) throws IOException {
+		FramedChannel channel = new FramedChannel(socket.getInputStream(), socket.getOutputStream());
+		channel.out.write(PREAMBLE);
+		channel.out.flush();
+		return channel;
+	}
+
+	/**
+	 * Waits for the first byte of an accepted connection and creates the matching channel.
+	 * @param socket the accepted socket
+	 * @return a framed channel, if the peer sent the preamble, otherwise a line based channel
+	 * @throws IOException if the peer closed the connection before sending anything
+	 */
+	public static Channel accept(Socket socket) throws IOException {
+		PushbackInputStream in = new PushbackInputStream(socket.getInputStream());
+		int first = in.read();
+		if(first == -1){
+			throw new SocketException();
+		}
+		if(first == PREAMBLE){
+			return new FramedChannel(in, socket.getOutputStream());
+		}
+		in.unread(first);
+		return new TcpChannel(socket, in);
+	}
+
+	@Override
+	public synchronized void write(byte[] message) {
+		try {
+			out.writeInt(message.length);
+			out.write(message);
+			out.flush();
+		}
+		catch (IOException e) {
+			try {
+				close();
+			}
+			catch (IOException e1) {}
+		}
+	}
+
+	@Override
+	public byte[] read() throws IOException {
+		int length;
+		try {
+			length = in.readInt();
+		}
+		catch (EOFException e) {
+			throw new SocketException();
+		}
+		if(length<0 || length>MAX_FRAME_LENGTH){
+			throw new IOException("Invalid frame length "+length);
+		}
+		byte[] message = new byte[Math.min(length, CHUNK)];
+		int read = 0;
+		while(read<length){
+			if(read == message.length){
+				message = Arrays.copyOf(message, Math.min(length, 2*message.length));
+			}
+			int n = in.read(message, read, message.length-read);
+			if(n<0){
+				throw new SocketException();
+			}
+			read = read + n;
+		}
+		return message;
+	}
+
+	@Override
+	public boolean isBinary() {
+		return true;
+	}
+
+	/**
+	 * Closes the streams. The socket may already be closed, then the buffered bytes are discarded.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			out.close();
+		}
+		catch (SocketException e) {}
+		finally {
+			in.close();
+		}
+	}
+}
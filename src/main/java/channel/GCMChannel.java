@@ -0,0 +1,108 @@
+package channel;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import util.CryptoPool;
+
+/**
+ * Messages that are sent are encrypted and authenticated with AES in Galois/Counter Mode, messages that are received are checked and decrypted back.
+ * Unlike the {@link AESChannel}, a modified message is detected without a separate HMAC.
+ * <p>
+ * The 12 byte nonce of a message is not sent: it consists of the direction of the message, the first 3 bytes of the exchanged initialization vector
+ * and a counter of the messages sent in that direction. Since the transport delivers the messages in order, both sides know the nonce of the next message,
+ * and no nonce is used twice with the same key. The cipher is taken from the {@link CryptoPool} for every message.
+ */
+public class GCMChannel extends ChannelDecorator {
+
+	public static final String NAME = "gcm";
+	private static final int TAG_LENGTH = 128;
+
+	private final String algorithm = "AES/GCM/NoPadding";
+	private SecretKey secretKey;
+	private byte[] sendNonce;
+	private byte[] receiveNonce;
+	private long sendCounter;
+	private long receiveCounter;
+
+	/**
+	 * @param channel
+	 * @param secretKey the AES key of the session
+	 * @param ivParameter the initialization vector of the session
+	 * @param client true on the side of the client, false on the side of the cloud controller
+	 */
+	public GCMChannel(Channel channel, SecretKey secretKey, byte[] ivParameter, boolean client) {
+		super(channel);
+		this.secretKey = secretKey;
+		this.sendNonce = nonce(ivParameter, client ? 0 : 1);
+		this.receiveNonce = nonce(ivParameter, client ? 1 : 0);
+		try {
+			CryptoPool.getCipher(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			System.err.println("Algorithm" + algorithm + "not found.");
+		} catch (NoSuchPaddingException e) {
+			System.err.println("Padding mechanism not available in the environment.");
+		}
+	}
+
+	private static byte[] nonce(byte[] ivParameter, int direction){
+		byte[] nonce = new byte[12];
+		nonce[0] = (byte) direction;
+		System.arraycopy(ivParameter, 0, nonce, 1, 3);
+		return nonce;
+	}
+
+	private static void setCounter(byte[] nonce, long counter){
+		for(int i = 0; i<8; i++){
+			nonce[11-i] = (byte) (counter >>> (8*i));
+		}
+	}
+
+	@Override
+	public void write(byte[] message) {
+		try {
+			setCounter(sendNonce, sendCounter++);
+			Cipher encryption = CryptoPool.getCipher(algorithm);
+			encryption.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH, sendNonce));
+			channel.write(encryption.doFinal(message));
+		} catch (InvalidKeyException e) {
+			System.err.println("Invalid Key: please check the length and encoding of the key.");
+		} catch (InvalidAlgorithmParameterException e) {
+			System.err.println("Invalid or inappropriate algorithm parameters.");
+		} catch (GeneralSecurityException e) {
+			System.err.println("Could not encrypt the message: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * @throws IntegrityException if the message was modified, replayed or reordered
+	 */
+	@Override
+	public byte[] read() throws IOException {
+		byte[] received = channel.read();
+		try {
+			setCounter(receiveNonce, receiveCounter++);
+			Cipher decryption = CryptoPool.getCipher(algorithm);
+			decryption.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH, receiveNonce));
+			return decryption.doFinal(received);
+		} catch (AEADBadTagException e) {
+			throw new IntegrityException("!tampered");
+		} catch (GeneralSecurityException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,117 @@
+package channel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+
+import util.CryptoPool;
+
+/**
+ * {@link BufferChannel} decorator, which protects every message with a HMAC. Unlike the {@link HmacChannel} the HMAC is sent as raw bytes in front of the message,
+ * which is written with the same gather write as the HMAC. The HMAC is computed directly on the buffers, and into arrays which are allocated once per channel.
+ * The Mac is taken from the {@link CryptoPool} for every message.
+ */
+public class HmacBufferChannel implements BufferChannel {
+
+	private final String algorithm = "HmacSHA256";
+	private BufferChannel channel;
+	private Key secretKey;
+	private byte[] computedHash;
+	private byte[] receivedHash;
+	private ByteBuffer hashBuffer;
+	private ByteBuffer[] gather;
+	private ByteBuffer lastMessage;
+
+	public HmacBufferChannel(BufferChannel channel, Key secretKey) {
+		this.channel = channel;
+		this.secretKey = secretKey;
+		Mac hMac = mac();
+		this.computedHash = new byte[hMac.getMacLength()];
+		this.receivedHash = new byte[hMac.getMacLength()];
+		this.hashBuffer = ByteBuffer.wrap(computedHash);
+		this.gather = new ByteBuffer[4];
+	}
+
+	private Mac mac() {
+		try {
+			return CryptoPool.getMac(algorithm, secretKey);
+		} catch (NoSuchAlgorithmException e) {
+			System.err.println("Algorithm" + algorithm + "not found.");
+		} catch (InvalidKeyException e) {
+			System.err.println("Invalid Key: please check the length and encoding of the key.");
+		}
+		return null;
+	}
+
+	@Override
+	public void write(ByteBuffer[] message, int offset, int length) throws IOException {
+		Mac hMac = mac();
+		if(length+1>gather.length){
+			gather = new ByteBuffer[length+1];
+		}
+		for(int i = 0; i<length; i++){
+			ByteBuffer buffer = message[offset+i];
+			int position = buffer.position();
+			hMac.update(buffer);
+			buffer.position(position);
+			gather[i+1] = buffer;
+		}
+		try {
+			hMac.doFinal(computedHash, 0);
+		}
+		catch (ShortBufferException e) {
+			throw new IOException(e);
+		}
+		hashBuffer.clear();
+		gather[0] = hashBuffer;
+		channel.write(gather, 0, length+1);
+		for(int i = 0; i<=length; i++){
+			gather[i] = null;
+		}
+	}
+
+	/**
+	 * @return the message without the HMAC
+	 * @throws IntegrityException if the HMAC does not match the message, the message is then still available through {@link #getLastMessage()}
+	 */
+	@Override
+	public ByteBuffer read() throws IOException {
+		lastMessage = channel.read();
+		if(lastMessage.remaining()<receivedHash.length){
+			throw new IntegrityException("!tampered");
+		}
+		lastMessage.get(receivedHash);
+		Mac hMac = mac();
+		int position = lastMessage.position();
+		hMac.update(lastMessage);
+		lastMessage.position(position);
+		try {
+			hMac.doFinal(computedHash, 0);
+		}
+		catch (ShortBufferException e) {
+			throw new IOException(e);
+		}
+		if(!MessageDigest.isEqual(computedHash, receivedHash)){
+			throw new IntegrityException("!tampered");
+		}
+		return lastMessage;
+	}
+
+	/**
+	 * @return the last message that was read, even if its HMAC did not match
+	 */
+	public ByteBuffer getLastMessage() {
+		return lastMessage;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -11,33 +11,63 @@ import javax.crypto.Mac;
 
 import org.bouncycastle.util.encoders.Base64;
 
+import util.CryptoPool;
 import util.Keys;
 
+/**
+ * Every message is sent with its HMAC in front, the HMAC of every received message is checked.
+ * The Mac is taken from the {@link CryptoPool} for every message, so the channel can be used by any thread.
+ */
 public class HmacChannel extends ChannelDecorator {
 	
 	private final String algorithm = "HmacSHA256";
-	private Mac hMac;
+	private Key secretKey;
 
 	public HmacChannel(Channel channel, String hmacKey) {
 		super(channel);
 		
 		try {
-			Key secretKey = Keys.readSecretKey(new File(hmacKey));
-			hMac = Mac.getInstance(algorithm);
-			hMac.init(secretKey);
+			Key secretKey = Keys.getSecretKey(new File(hmacKey));
+			initializeMac(secretKey);
+		} catch (IOException e) {
+			System.err.println("IOException: maybe the file does not exist.");
+		}
+		
+	}
+
+	/**
+	 * Uses an already loaded key, so that long-lived connections do not have to read the key file again.
+	 * @param channel
+	 * @param secretKey the shared secret key of the cloud controller and the nodes
+	 */
+	public HmacChannel(Channel channel, Key secretKey) {
+		super(channel);
+		initializeMac(secretKey);
+	}
+
+	private void initializeMac(Key secretKey) {
+		this.secretKey = secretKey;
+		mac();
+	}
+
+	/**
+	 * @return the Mac of the calling thread, or null if the algorithm or the key is not supported
+	 */
+	private Mac mac() {
+		try {
+			return CryptoPool.getMac(algorithm, secretKey);
 		} catch (NoSuchAlgorithmException e) {
 			System.err.println("Algorithm" + algorithm + "not found.");
 		} catch (InvalidKeyException e) {
 			System.err.println("Invalid Key: please check the length and encoding of the key.");
-		} catch (IOException e) {
-			System.err.println("IOException: maybe the file does not exist.");
 		}
-		
+		return null;
 	}
 
 	@Override
 	public void write(byte[] message) {
 		byte[] tmp = message;
+		Mac hMac = mac();
 		hMac.update(tmp);
 		byte[] hash = Base64.encode(hMac.doFinal());
 		
@@ -67,6 +97,7 @@ public class HmacChannel extends ChannelDecorator {
 		}
 		plaintext = plaintext.trim();
 		
+		Mac hMac = mac();
 		hMac.update(plaintext.getBytes());
 		byte[] computedHash = hMac.doFinal();
 		
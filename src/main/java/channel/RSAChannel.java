@@ -18,16 +18,17 @@ import javax.crypto.SecretKey;
 
 import org.bouncycastle.util.encoders.Base64;
 
+import util.CryptoPool;
 import util.Keys;
 
 /**
  * Messages that are sent are encrypted with the RSA algorithm, messages that are received are decrypted back.
+ * The ciphers, the key generator and the random numbers are taken from the {@link CryptoPool}, so a handshake does not look up any provider.
  */
 public class RSAChannel extends ChannelDecorator {
 
 	private final String algorithm = "RSA/NONE/OAEPWithSHA256AndMGF1Padding";
-	private Cipher encryption;
-	private Cipher decryption;
+	private PrivateKey privateKey;
 	private byte[] challenge;
 	private SecretKey key;
 	private byte[] initializationVector;
@@ -41,9 +42,8 @@ public class RSAChannel extends ChannelDecorator {
 	public RSAChannel(Channel channel, File privateKeyPath) throws IOException {
 		super(channel);
 		try {
-			PrivateKey privateKey = Keys.readPrivatePEM(privateKeyPath);
-			decryption = Cipher.getInstance(algorithm);
-			decryption.init(Cipher.DECRYPT_MODE, privateKey);
+			privateKey = Keys.getPrivatePEM(privateKeyPath);
+			decryption();
 		} catch (InvalidKeyException e) {
 			System.err.println("Invalid Key: please check the length and encoding of the private key.");
 		} catch (NoSuchAlgorithmException e) {
@@ -59,10 +59,49 @@ public class RSAChannel extends ChannelDecorator {
 
 	}
 
+	/**
+	 * @return the cipher of the calling thread, initialized for decryption with the private key
+	 */
+	private Cipher decryption() throws InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException {
+		Cipher decryption = CryptoPool.getCipher(algorithm);
+		decryption.init(Cipher.DECRYPT_MODE, privateKey);
+		return decryption;
+	}
+
+	/**
+	 * Decrypts a message which was already read from the underlying channel.
+	 * @param received the Base64 encoded message
+	 * @return the decrypted message, empty if it could not be decrypted
+	 */
+	public byte[] decrypt(byte[] received) {
+		try {
+			return decryption().doFinal(Base64.decode(received));
+		} catch (InvalidKeyException e) {
+			System.err.println("Invalid Key: please check the length and encoding of the private key.");
+		} catch (NoSuchAlgorithmException e) {
+			System.err.println("Algorithm" + algorithm + "not found.");
+		} catch (NoSuchPaddingException e) {
+			System.err.println("Padding mechanism not available in the environment.");
+		} catch (IllegalBlockSizeException e) {
+			System.err.println("Input data is not a multiple of the block-size.");
+		} catch (BadPaddingException e) {
+			System.err.println("Bad padding.");
+		} catch (RuntimeException e) {
+			System.err.println("Invalid Base64 encoding.");
+		}
+		return new byte[0];
+	}
+
 	@Override
 	public byte[] read() throws IOException {
 		try {
-			return decryption.doFinal(Base64.decode(channel.read()));
+			return decryption().doFinal(Base64.decode(channel.read()));
+		} catch (InvalidKeyException e) {
+			System.err.println("Invalid Key: please check the length and encoding of the private key.");
+		} catch (NoSuchAlgorithmException e) {
+			System.err.println("Algorithm" + algorithm + "not found.");
+		} catch (NoSuchPaddingException e) {
+			System.err.println("Padding mechanism not available in the environment.");
 		} catch (IllegalBlockSizeException e) {
 			System.err.println("Input data is not a multiple of the block-size.");
 		} catch (BadPaddingException e) {
@@ -85,14 +124,25 @@ public class RSAChannel extends ChannelDecorator {
 	 * @param controllerKey the cloud controller's public key
 	 */
 	public void sendFirstMessage(byte[] firstPartOfMessage, String controllerKey) {
+		sendFirstMessage(firstPartOfMessage, new byte[0], controllerKey);
+	}
+
+	/**
+	 * Sends the first message followed by optional parameters, e.g. the session cipher offered by the client.
+	 * @param firstPartOfMessage the part !authenticate username of the message
+	 * @param lastPartOfMessage the part after the client-challenge, including the leading space
+	 * @param controllerKey the cloud controller's public key
+	 */
+	public void sendFirstMessage(byte[] firstPartOfMessage, byte[] lastPartOfMessage, String controllerKey) {
 		try {
 			challenge = generateSecureRandomNumber(32);
 			byte[] base64EncryptedSecureRandomNumber = Base64.encode(challenge);
-			PublicKey publicKey = Keys.readPublicPEM(new File(controllerKey));
-			initializeCipher(publicKey);
-			byte[] message = new byte[firstPartOfMessage.length + base64EncryptedSecureRandomNumber.length];
+			PublicKey publicKey = Keys.getPublicPEM(new File(controllerKey));
+			Cipher encryption = initializeCipher(publicKey);
+			byte[] message = new byte[firstPartOfMessage.length + base64EncryptedSecureRandomNumber.length + lastPartOfMessage.length];
 			System.arraycopy(firstPartOfMessage, 0, message, 0, firstPartOfMessage.length);
 			System.arraycopy(base64EncryptedSecureRandomNumber, 0, message, firstPartOfMessage.length, base64EncryptedSecureRandomNumber.length);
+			System.arraycopy(lastPartOfMessage, 0, message, firstPartOfMessage.length + base64EncryptedSecureRandomNumber.length, lastPartOfMessage.length);
 			write(Base64.encode(encryption.doFinal(message)));
 		} catch (InvalidKeyException e) {
 			System.err.println("Invalid Key: please check the length and encoding of the public controller key.");
@@ -116,14 +166,24 @@ public class RSAChannel extends ChannelDecorator {
 	 * @param userKey the directory where the user's public key is located.
 	 */
 	public void sendSecondMessage(byte[] clientChallenge, String userKey) {
+		sendSecondMessage(clientChallenge, new byte[0], userKey);
+	}
+
+	/**
+	 * Sends the second message followed by optional parameters, e.g. the session cipher accepted by the cloud controller.
+	 * @param clientChallenge the challenge that the client sent in the first message.
+	 * @param lastPartOfMessage the part after the iv-parameter, including the leading space
+	 * @param userKey the directory where the user's public key is located.
+	 */
+	public void sendSecondMessage(byte[] clientChallenge, byte[] lastPartOfMessage, String userKey) {
 		try {
 			byte[] space = " ".getBytes();
 			byte[] ok = "!ok".getBytes();
 			challenge = Base64.encode(generateSecureRandomNumber(32));
 			byte[] secretKey = Base64.encode(generateSecretAESKey().getEncoded());
 			initializationVector = Base64.encode(generateSecureRandomNumber(16));
-			PublicKey publicKey = Keys.readPublicPEM(new File(userKey));
-			initializeCipher(publicKey);
+			PublicKey publicKey = Keys.getPublicPEM(new File(userKey));
+			Cipher encryption = initializeCipher(publicKey);
 			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 			outputStream.write(ok);
 			outputStream.write(space);
@@ -134,6 +194,7 @@ public class RSAChannel extends ChannelDecorator {
 			outputStream.write(secretKey);
 			outputStream.write(space);
 			outputStream.write(initializationVector);
+			outputStream.write(lastPartOfMessage);
 			byte message[] = outputStream.toByteArray();
 			outputStream.close();
 			write(Base64.encode(encryption.doFinal(message)));
@@ -160,7 +221,7 @@ public class RSAChannel extends ChannelDecorator {
 	 * @return the secure random number.
 	 */
 	private byte[] generateSecureRandomNumber(int length){
-		SecureRandom secureRandom = new SecureRandom();
+		SecureRandom secureRandom = CryptoPool.getSecureRandom();
 		final byte[] number = new byte[length];
 		secureRandom.nextBytes(number);
 		return number;
@@ -169,13 +230,15 @@ public class RSAChannel extends ChannelDecorator {
 	/**
 	 * Initializes the cipher used for encryption.
 	 * @param publicKey the user's or controller's public key.
+	 * @return the cipher of the calling thread, initialized for encryption
 	 * @throws InvalidKeyException
 	 * @throws NoSuchAlgorithmException
 	 * @throws NoSuchPaddingException
 	 */
-	private void initializeCipher(PublicKey publicKey) throws InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException{
-		encryption = Cipher.getInstance(algorithm);
+	private Cipher initializeCipher(PublicKey publicKey) throws InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException{
+		Cipher encryption = CryptoPool.getCipher(algorithm);
 		encryption.init(Cipher.ENCRYPT_MODE, publicKey);
+		return encryption;
 	}
 	
 	/**
@@ -185,12 +248,11 @@ public class RSAChannel extends ChannelDecorator {
 	private SecretKey generateSecretAESKey(){
 		KeyGenerator generator = null;
 		try {
-			generator = KeyGenerator.getInstance("AES");
+			// KEYSIZE is in bits
+			generator = CryptoPool.getKeyGenerator("AES", 256);
 		} catch (NoSuchAlgorithmException e) {
 			System.err.println("Algorithm AES not found.");
 		}
-		// KEYSIZE is in bits
-		generator.init(256);
 		key = generator.generateKey();
 		return key;
 	}
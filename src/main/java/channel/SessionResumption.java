@@ -0,0 +1,56 @@
+package channel;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import util.CryptoPool;
+
+/**
+ * Derives the keys of a resumed session. After the !authenticate handshake the client receives a session ticket and a resumption secret.
+ * To resume, both sides exchange a fresh nonce and derive the AES key and the initialization vector of a new {@link GCMChannel}
+ * with HmacSHA256 from the secret and the two nonces, so a resumed session never reuses the keys of an earlier one.
+ */
+public final class SessionResumption {
+
+	public static final String RESUME = "!resume";
+	public static final String RESUMED = "!resumed";
+	public static final String TICKET = "!ticket";
+	public static final int NONCE_LENGTH = 32;
+
+	private SessionResumption() {}
+
+	/**
+	 * @return a new random nonce or resumption secret
+	 */
+	public static byte[] newNonce(){
+		byte[] nonce = new byte[NONCE_LENGTH];
+		CryptoPool.getSecureRandom().nextBytes(nonce);
+		return nonce;
+	}
+
+	/**
+	 * @return the AES key of the resumed session
+	 */
+	public static SecretKey deriveKey(byte[] secret, byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+		return new SecretKeySpec(derive(secret, "key", clientNonce, serverNonce), "AES");
+	}
+
+	/**
+	 * @return the initialization vector of the resumed session
+	 */
+	public static byte[] deriveIv(byte[] secret, byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+		return Arrays.copyOf(derive(secret, "iv", clientNonce, serverNonce), 16);
+	}
+
+	private static byte[] derive(byte[] secret, String label, byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+		Mac mac = CryptoPool.getMac("HmacSHA256", new SecretKeySpec(secret, "HmacSHA256"));
+		mac.update(label.getBytes());
+		mac.update(clientNonce);
+		mac.update(serverNonce);
+		return mac.doFinal();
+	}
+}
@@ -29,6 +29,11 @@ public class StreamChannel implements Channel {
 		return response.getBytes();
 	}
 	
+	@Override
+	public boolean isBinary() {
+		return false;
+	}
+
 	@Override
 	public void close() throws IOException{
 		if(out != null) out.close();
@@ -2,6 +2,7 @@ package channel;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
@@ -17,6 +18,18 @@ public class TcpChannel implements Channel {
 		this.iochannel = new StreamChannel(out, in);
 	}
 
+	/**
+	 * @param socket
+	 * @param inputStream the input stream of the socket, from which already read bytes may have been pushed back
+	 * @throws IOException
+	 */
+	public TcpChannel(Socket socket, InputStream inputStream) throws IOException {
+		PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+		BufferedReader in = new BufferedReader(new InputStreamReader(inputStream));
+		
+		this.iochannel = new StreamChannel(out, in);
+	}
+
 	@Override
 	public void write(byte[] message) {
 		iochannel.write(message);
@@ -27,6 +40,11 @@ public class TcpChannel implements Channel {
 		return iochannel.read();
 	}
 	
+	@Override
+	public boolean isBinary() {
+		return false;
+	}
+	
 	@Override
 	public void close() throws IOException{
 		iochannel.close();
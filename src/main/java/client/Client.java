@@ -9,6 +9,7 @@ import java.net.ConnectException;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
 import java.util.Arrays;
 
 import javax.crypto.SecretKey;
@@ -18,9 +19,12 @@ import org.bouncycastle.util.encoders.Base64;
 
 import util.Config;
 import channel.AESChannel;
+import channel.GCMChannel;
 import channel.Base64Channel;
 import channel.Channel;
+import channel.FramedChannel;
 import channel.RSAChannel;
+import channel.SessionResumption;
 import channel.TcpChannel;
 import cli.Command;
 import cli.Shell;
@@ -34,11 +38,15 @@ public class Client implements IClientCli, Runnable {
 	private int controllerTcpPort;
 	private String keysDir;
 	private String controllerKey;
+	private boolean framing;
+	private String sessionCipher;
 	private Shell shell;
 	private Socket socket;
 	private Channel tcpChannel;
-	private AESChannel aesChannel;
+	private Channel aesChannel;
 	private boolean authenticated = false;
+	private String ticket;
+	private byte[] ticketSecret;
 
 	/**
 	 * @param componentName
@@ -64,6 +72,8 @@ public class Client implements IClientCli, Runnable {
 		controllerTcpPort = config.getInt("controller.tcp.port");
 		keysDir = config.getString("keys.dir");
 		controllerKey = config.getString("controller.key");
+		framing = Boolean.parseBoolean(config.getString("controller.framing"));
+		sessionCipher = config.getString("session.cipher");
 	}
 
 	/**
@@ -74,7 +84,7 @@ public class Client implements IClientCli, Runnable {
 	private void connectToCloudControllerAndStartShell(){
 		try {
 			socket = new Socket(controllerHost,controllerTcpPort);
-			this.tcpChannel = new TcpChannel(socket);
+			this.tcpChannel = openChannel(socket);
 			startShell();
 		}
 		catch(ConnectException e) {
@@ -95,7 +105,7 @@ public class Client implements IClientCli, Runnable {
 		close();
 		try {
 			socket = new Socket(controllerHost,controllerTcpPort);
-			this.tcpChannel = new TcpChannel(socket);
+			this.tcpChannel = openChannel(socket);
 			new Thread(shell).start();
 		}
 		catch(ConnectException e) {
@@ -106,6 +116,18 @@ public class Client implements IClientCli, Runnable {
 		catch (IOException e) {}
 	}
 
+	/**
+	 * @param socket the socket connected to the cloud controller
+	 * @return a binary framed channel if controller.framing is set, otherwise a line based channel
+	 * @throws IOException
+	 */
+	private Channel openChannel(Socket socket) throws IOException{
+		if(framing){
+			return FramedChannel.connect(socket);
+		}
+		return new TcpChannel(socket);
+	}
+
 	/**
 	 * Registers to the shell the interactive commands that the client can perform and then starts the shell.
 	 */
@@ -131,6 +153,10 @@ public class Client implements IClientCli, Runnable {
 			response = new String(aesChannel.read());
 		}
 		catch (SocketException e){
+			if(ticket != null && reconnectAndResume()){
+				//the request may or may not have been performed before the connection was lost, so repeating it could charge it twice
+				return "The connection to the cloud controller was lost and the session was resumed. It is unknown whether the request was performed.";
+			}
 			//cloud controller suddenly went offline. make sure to close all the resources in order to exit this client.
 			close();
 			return "Cloud controller suddenly went offline. Shutting down " +componentName + " now";
@@ -139,13 +165,57 @@ public class Client implements IClientCli, Runnable {
 	}
 
 	/**
-	 * Releases all resources and closes the socket.
+	 * Requests a session ticket, with which the session can be resumed on a new connection without the RSA handshake.
+	 * @throws IOException
+	 */
+	private void requestTicket() throws IOException{
+		aesChannel.write(SessionResumption.TICKET.getBytes());
+		String[] response = new String(aesChannel.read()).split("\\s+");
+		if(response.length == 3 && response[0].equals(SessionResumption.TICKET)){
+			ticket = response[1];
+			ticketSecret = Base64.decode(response[2]);
+		}
+	}
+
+	/**
+	 * Connects to the cloud controller again and resumes the session with the session ticket.
+	 * @return true if the session was resumed
+	 */
+	private boolean reconnectAndResume(){
+		try {
+			if(socket != null) socket.close();
+			socket = new Socket(controllerHost,controllerTcpPort);
+			this.tcpChannel = openChannel(socket);
+			Channel messageChannel = tcpChannel.isBinary() ? tcpChannel : new Base64Channel(tcpChannel);
+			byte[] clientNonce = SessionResumption.newNonce();
+			messageChannel.write((SessionResumption.RESUME+" "+ticket+" "+new String(Base64.encode(clientNonce))).getBytes());
+			String[] response = new String(messageChannel.read()).split("\\s+");
+			if(response.length != 2 || !response[0].equals(SessionResumption.RESUMED)){
+				ticket = null;
+				return false;
+			}
+			byte[] serverNonce = Base64.decode(response[1]);
+			aesChannel = new GCMChannel(messageChannel, SessionResumption.deriveKey(ticketSecret, clientNonce, serverNonce),
+					SessionResumption.deriveIv(ticketSecret, clientNonce, serverNonce), true);
+			aesChannel.write(serverNonce);
+			return new String(aesChannel.read()).equals("Successfully authenticated!");
+		}
+		catch (IOException e) {
+			return false;
+		}
+		catch (GeneralSecurityException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Releases all resources and closes the socket. The channel is closed first, so it can flush its buffer to the socket.
 	 * @throws IOException
 	 */
 	private void close() throws IOException{
 		shell.close();
+		if(tcpChannel != null) tcpChannel.close();
 		if(socket != null) socket.close();
-		tcpChannel.close();
 	}
 
 	/**
@@ -168,6 +238,7 @@ public class Client implements IClientCli, Runnable {
 	public String logout() throws IOException {
 		String response = sendRequest("!logout");
 		authenticated = false;
+		ticket = null;
 		return response;
 	}
 
@@ -219,15 +290,19 @@ public class Client implements IClientCli, Runnable {
 			return "You are already authenticated";
 		}
 		try {
-			RSAChannel rsaChannel = new RSAChannel(new Base64Channel(tcpChannel), new File(keysDir+"/"+username+".pem"));
-			rsaChannel.sendFirstMessage(("!authenticate "+username+" ").getBytes(), controllerKey);
+			//encrypted messages can only be sent over a line based channel if they are encoded in Base64
+			Channel messageChannel = tcpChannel.isBinary() ? tcpChannel : new Base64Channel(tcpChannel);
+			RSAChannel rsaChannel = new RSAChannel(messageChannel, new File(keysDir+"/"+username+".pem"));
+			//the cloud controller confirms an offered gcm session in the second message
+			boolean offerGcm = sessionCipher.equals(GCMChannel.NAME);
+			rsaChannel.sendFirstMessage(("!authenticate "+username+" ").getBytes(), (offerGcm ? " "+GCMChannel.NAME : "").getBytes(), controllerKey);
 			String secondMessage = new String(rsaChannel.read());
 			String[] okMessageParts = secondMessage.split("\\s+");
 			if(!Arrays.equals(Base64.decode(okMessageParts[1]),rsaChannel.getChallenge())){
 				restartCloudControllerAndShell();
 				return "Authentication failed: Challenges not equal!";
 			}
-			if(!secondMessage.matches("!ok ["+B64+"]{43}= ["+B64+"]{43}= ["+B64+"]{43}= ["+B64+"]{22}==")){
+			if(!secondMessage.matches("!ok ["+B64+"]{43}= ["+B64+"]{43}= ["+B64+"]{43}= ["+B64+"]{22}==( "+GCMChannel.NAME+")?")){
 				restartCloudControllerAndShell();
 				return "Authentication failed: Syntax of the received second message not ok.";
 			}
@@ -236,7 +311,12 @@ public class Client implements IClientCli, Runnable {
 			byte[] initializationVector = Base64.decode(okMessageParts[4].getBytes());
 			SecretKey key = new SecretKeySpec(secretKey, 0, secretKey.length, "AES");
 
-			aesChannel = new AESChannel(new Base64Channel(tcpChannel),key,initializationVector);
+			if(offerGcm && okMessageParts.length>5){
+				aesChannel = new GCMChannel(messageChannel,key,initializationVector,true);
+			}
+			else{
+				aesChannel = new AESChannel(messageChannel,key,initializationVector);
+			}
 			aesChannel.write(cloudControllerChallenge); //first message encrypted in AES
 		} 
 		catch(FileNotFoundException e){
@@ -249,6 +329,7 @@ public class Client implements IClientCli, Runnable {
 		String response = new String(aesChannel.read());
 		if(!response.contains("already") && !response.contains("not equal")){
 			authenticated = true;
+			requestTicket();
 		}
 		return response;
 	}
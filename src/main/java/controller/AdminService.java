@@ -1,9 +1,5 @@
 package controller;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.PrintWriter;
-import java.net.Socket;
 import java.rmi.AccessException;
 import java.rmi.AlreadyBoundException;
 import java.rmi.NotBoundException;
@@ -13,13 +9,11 @@ import java.rmi.registry.Registry;
 import java.rmi.server.ExportException;
 import java.rmi.server.UnicastRemoteObject;
 import java.security.Key;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 import model.ComputationRequestInfo;
 import model.NodeInfo;
@@ -33,9 +27,18 @@ public class AdminService extends UnicastRemoteObject implements IAdminConsole {
 	private String bindingName;
 	private String controllerHost;
 	private int controllerRmiPort;
+	private ExecutorService executor;
+	private ScheduledExecutorService scheduler;
+	private int logsTimeout;
+	private int logsIdleTimeout;
 
-	public AdminService(CloudController cloudController, String bindingName, String controllerHost, int controllerRmiPort) throws RemoteException{
+	public AdminService(CloudController cloudController, String bindingName, String controllerHost, int controllerRmiPort, ExecutorService executor,
+			ScheduledExecutorService scheduler, int logsTimeout, int logsIdleTimeout) throws RemoteException{
 		this.cloudController = cloudController;
+		this.executor = executor;
+		this.scheduler = scheduler;
+		this.logsTimeout = logsTimeout;
+		this.logsIdleTimeout = logsIdleTimeout;
 		this.bindingName = bindingName;
 		this.controllerHost = controllerHost;
 		this.controllerRmiPort = controllerRmiPort;
@@ -70,50 +73,41 @@ public class AdminService extends UnicastRemoteObject implements IAdminConsole {
 		return cloudController.subscribe(username,credits,callback);
 	}
 
+	/**
+	 * Merges the logs of all online nodes, see {@link LogMerge}.
+	 */
 	@Override
 	public List<ComputationRequestInfo> getLogs() throws RemoteException {
+		LogMerge logMerge = new LogMerge(cloudController.getOnlineNodes(), "!getLogs", executor, logsTimeout);
 		List<ComputationRequestInfo> logs = new ArrayList<ComputationRequestInfo>();
-		for(NodeInfo node: cloudController.getOnlineNodes()){
-			Socket socket = null;
-			PrintWriter out = null;
-			ObjectInputStream in = null;
-			try {
-				socket = new Socket(node.getAddress(),node.getTcpPort());
-				out = new PrintWriter(socket.getOutputStream(), true);
-				out.println("!getLogs");
-				in = new ObjectInputStream(socket.getInputStream());
-				ComputationRequestInfo c = null;
-				while((c = (ComputationRequestInfo)in.readObject())!=null){
-					logs.add(c);
-				}
-			} 
-			catch (IOException e) {
-				try {
-					socket.close();
-					in.close();
-					out.close();
-				} catch (IOException e1) {}
-			} 
-			catch (ClassNotFoundException e) {}
+		ComputationRequestInfo c;
+		while((c = logMerge.next()) != null){
+			logs.add(c);
 		}
-		//sort by timestamp
-		Collections.sort(logs, new Comparator<ComputationRequestInfo>() {
-			SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss.SSS");
-			public int compare(ComputationRequestInfo one, ComputationRequestInfo other) {
-				try {
-					if (sdf.parse(one.getTimestamp()).after(sdf.parse(other.getTimestamp()))) {
-						return 1;
-					} else {
-						return -1;
-					}
-				} catch (ParseException e) {} 
-				return -1;
+		if(logs.size()==0){
+			logs.add(new ComputationRequestInfo("No logs found!"));
+		}
+		return logs;
+	}
+
+	@Override
+	public ILogStream streamLogs() throws RemoteException {
+		return new RemoteLogStream(new LogMerge(cloudController.getOnlineNodes(), "!getLogs", executor, logsTimeout), scheduler, logsIdleTimeout);
+	}
+
+	@Override
+	public List<ComputationRequestInfo> getLogs(int tcpPort, long from, long to, int offset, int limit) throws RemoteException {
+		List<NodeInfo> nodes = new ArrayList<NodeInfo>();
+		for(NodeInfo node: cloudController.getOnlineNodes()){
+			if(node.getTcpPort() == tcpPort){
+				nodes.add(node);
 			}
-		});
+		}
+		LogMerge logMerge = new LogMerge(nodes, "!getLogs "+from+" "+to+" "+offset+" "+limit, executor, logsTimeout);
+		List<ComputationRequestInfo> logs = logMerge.next(limit);
+		logMerge.close();
 		if(logs.size()==0){
-			List<ComputationRequestInfo> emptyList = new ArrayList<ComputationRequestInfo>();
-			emptyList.add(new ComputationRequestInfo("No logs found!"));
-			return emptyList;
+			logs.add(new ComputationRequestInfo("No logs found!"));
 		}
 		return logs;
 	}
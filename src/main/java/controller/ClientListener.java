@@ -5,32 +5,40 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+
+import util.ExecutorFactory;
 /**
  * Spawns a new thread every time a new client connects. 
  */
-public class ClientListener implements Runnable {
+public class ClientListener implements IClientListener {
 
 	private boolean running = true;
 	private ServerSocket serverSocket;
 	private int tcpPort;
 	private CloudController cloudController;
 	private String key;
-	private String hmacKey;
+	private TermPlanner termPlanner;
+	private TermEvaluator termEvaluator;
 	private String keysDir;
+	private SessionTickets sessionTickets;
+	private HandshakePool handshakePool;
 	private ArrayList<ClientHandler> clientHandlers;
 	private ExecutorService executor;
 
-	public ClientListener(int tcpPort, CloudController cloudController, String key, String hmacKey, String keysDir){
+	public ClientListener(int tcpPort, CloudController cloudController, String key, TermPlanner termPlanner, TermEvaluator termEvaluator, String keysDir, SessionTickets sessionTickets, HandshakePool handshakePool, ExecutorFactory executorFactory){
 		this.tcpPort = tcpPort;
 		this.cloudController = cloudController;
 		this.key = key;
-		this.hmacKey = hmacKey;
+		this.termPlanner = termPlanner;
+		this.termEvaluator = termEvaluator;
 		this.keysDir = keysDir;
+		this.sessionTickets = sessionTickets;
+		this.handshakePool = handshakePool;
 		clientHandlers = new ArrayList<ClientHandler>();
-		executor = Executors.newCachedThreadPool();
+		executor = executorFactory.newExecutor();
 	}
 
+	@Override
 	public void stopRunning() throws IOException{
 		running = false;
 		for(ClientHandler c : clientHandlers){
@@ -46,7 +54,7 @@ public class ClientListener implements Runnable {
 			serverSocket = new ServerSocket(tcpPort);
 			while(running){
 				Socket clientSocket = serverSocket.accept();
-				ClientHandler clientHandler = new ClientHandler(clientSocket, cloudController, key, hmacKey, keysDir);
+				ClientHandler clientHandler = new ClientHandler(clientSocket, cloudController, key, termPlanner, termEvaluator, keysDir, sessionTickets, handshakePool);
 				clientHandlers.add(clientHandler);
 				executor.submit(clientHandler);
 			}
@@ -0,0 +1,314 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.util.encoders.Base64;
+
+import channel.AESChannel;
+import channel.Base64Channel;
+import channel.Channel;
+import channel.GCMChannel;
+import channel.RSAChannel;
+import channel.SessionResumption;
+import model.UserInfo;
+
+/**
+ * The state of a single client connection: the RSA handshake of the !authenticate command, followed by the AES encrypted session.
+ * If the client offers gcm after its challenge, the session uses a {@link GCMChannel} instead of the unauthenticated {@link AESChannel}.
+ * <p>
+ * An authenticated client can request a session ticket with !ticket. On a new connection it can then send !resume ticket client-nonce instead of the first message of the handshake.
+ * The cloud controller answers !resumed server-nonce, and the client proves that it knows the resumption secret by sending the server-nonce over the {@link GCMChannel}
+ * whose keys are derived from the secret and both nonces (see {@link SessionResumption}). If the ticket is invalid, the cloud controller answers !resume failed
+ * and the client has to perform the full handshake.
+ * Each call of {@link #step() step} reads exactly one message from the transport channel and answers it, so the session can be driven
+ * either by a blocking {@link ClientHandler} or by the non-blocking {@link NioClientListener}, which only calls it once a message has arrived.
+ */
+public class ClientSession {
+
+	private enum State { AWAITING_AUTHENTICATION, AWAITING_CHALLENGE, AUTHENTICATED }
+
+	final String B64 = "a-zA-Z0-9/+";
+	private Channel transport;
+	private CloudController cloudController;
+	private String key;
+	private TermPlanner termPlanner;
+	private TermEvaluator termEvaluator;
+	private String keysDir;
+	private SessionTickets sessionTickets;
+	private HandshakePool handshakePool;
+	private volatile State state = State.AWAITING_AUTHENTICATION;
+	private String username;
+	private UserInfo user;
+	private RSAChannel rsaChannel;
+	private Channel aesChannel;
+	private byte[] expectedChallenge;
+
+	public ClientSession(Channel transport, CloudController cloudController, String key, TermPlanner termPlanner, TermEvaluator termEvaluator, String keysDir, SessionTickets sessionTickets, HandshakePool handshakePool){
+		this.transport = transport;
+		this.cloudController = cloudController;
+		this.key = key;
+		this.termPlanner = termPlanner;
+		this.termEvaluator = termEvaluator;
+		this.keysDir = keysDir;
+		this.sessionTickets = sessionTickets;
+		this.handshakePool = handshakePool;
+	}
+
+	/**
+	 * Reads the next message of the client and handles it according to the current state of the session.
+	 * @return false if the connection has to be closed, true otherwise
+	 * @throws IOException
+	 */
+	public boolean step() throws IOException{
+		switch(state){
+		case AWAITING_AUTHENTICATION:
+			return receiveFirstMessage();
+		case AWAITING_CHALLENGE:
+			receiveChallenge();
+			return true;
+		default:
+			String request = new String(aesChannel.read());
+			aesChannel.write(handleRequest(request).getBytes());
+			return true;
+		}
+	}
+
+	/**
+	 * @return true if the next message has to be the first message of a handshake
+	 */
+	public boolean isAwaitingAuthentication(){
+		return state == State.AWAITING_AUTHENTICATION;
+	}
+
+	/**
+	 * @return true if a handshake has been started and the client has not answered the challenge yet
+	 */
+	public boolean isHandshaking(){
+		return state == State.AWAITING_CHALLENGE;
+	}
+
+	/**
+	 * Sets the user offline, if he is still logged in.
+	 */
+	public void close(){
+		if(user != null){
+			cloudController.setUserOffline(user);
+			user = null;
+		}
+	}
+
+	/**
+	 * Reads the first message of the handshake (!authenticate username client-challenge) and sends the second message back.
+	 * The RSA operations are performed by the {@link HandshakePool}, a !resume request is answered without RSA, see {@link #receiveResume(Channel, String[]) receiveResume}.
+	 * @return false if the first message is malformed
+	 * @throws IOException if the connection failed or the handshake pool rejected the handshake
+	 */
+	private boolean receiveFirstMessage() throws IOException{
+		//encrypted messages can only be sent over a line based transport if they are encoded in Base64
+		final Channel messageChannel = transport.isBinary() ? transport : new Base64Channel(transport);
+		final byte[] received = messageChannel.read();
+		String plaintext = new String(received);
+		if(plaintext.startsWith(SessionResumption.RESUME+" ")){
+			return receiveResume(messageChannel, plaintext.split("\\s+"));
+		}
+		return handshakePool.run(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws IOException {
+				return answerFirstMessage(messageChannel, received);
+			}
+		});
+	}
+
+	/**
+	 * Decrypts the first message of the handshake and sends the second message back.
+	 * @return false if the first message is malformed
+	 * @throws IOException
+	 */
+	private boolean answerFirstMessage(Channel messageChannel, byte[] received) throws IOException{
+		rsaChannel = new RSAChannel(messageChannel,new File(key));
+		String firstMessage = new String(rsaChannel.decrypt(received));
+		String[] authenticationMessageParts = firstMessage.split("\\s+");
+		if(!firstMessage.matches("!authenticate \\w+ ["+B64+"]{43}=( "+GCMChannel.NAME+")?")){
+			return false;
+		}
+		username = authenticationMessageParts[1];
+		if(authenticationMessageParts.length>3){
+			rsaChannel.sendSecondMessage(authenticationMessageParts[2].getBytes(), (" "+GCMChannel.NAME).getBytes(), keysDir+"/"+username+".pub.pem");
+			aesChannel = new GCMChannel(messageChannel,rsaChannel.getKey(),rsaChannel.getInitializationVector(),false);
+		}
+		else{
+			rsaChannel.sendSecondMessage(authenticationMessageParts[2].getBytes(), keysDir+"/"+username+".pub.pem");
+			aesChannel = new AESChannel(messageChannel,rsaChannel.getKey(),rsaChannel.getInitializationVector());
+		}
+		expectedChallenge = Base64.decode(rsaChannel.getChallenge());
+		state = State.AWAITING_CHALLENGE;
+		return true;
+	}
+
+	/**
+	 * Opens the ticket of a !resume ticket client-nonce request and sends a server-nonce back, which the client has to return over the resumed session.
+	 * A malformed request, an invalid ticket or a cloud controller without session tickets is answered with !resume failed.
+	 * @return false if the resumed session could not be set up
+	 * @throws IOException
+	 */
+	private boolean receiveResume(Channel messageChannel, String[] request) throws IOException{
+		SessionTickets.Ticket ticket = null;
+		byte[] clientNonce = null;
+		if(request.length == 3 && sessionTickets != null){
+			ticket = sessionTickets.open(request[1]);
+			try {
+				clientNonce = Base64.decode(request[2]);
+			}
+			catch (RuntimeException e) {
+				//malformed Base64
+			}
+		}
+		if(ticket == null || clientNonce == null || clientNonce.length != SessionResumption.NONCE_LENGTH){
+			messageChannel.write((SessionResumption.RESUME+" failed").getBytes());
+			return true;
+		}
+		byte[] serverNonce = SessionResumption.newNonce();
+		try {
+			aesChannel = new GCMChannel(messageChannel, SessionResumption.deriveKey(ticket.getSecret(), clientNonce, serverNonce),
+					SessionResumption.deriveIv(ticket.getSecret(), clientNonce, serverNonce), false);
+		}
+		catch (GeneralSecurityException e) {
+			return false;
+		}
+		messageChannel.write((SessionResumption.RESUMED+" "+new String(Base64.encode(serverNonce))).getBytes());
+		username = ticket.getUsername();
+		expectedChallenge = serverNonce;
+		state = State.AWAITING_CHALLENGE;
+		return true;
+	}
+
+	/**
+	 * Reads the third message of the handshake, which has to contain the controller-challenge (or the server-nonce of a resumed session), and logs the user in.
+	 * @throws IOException
+	 */
+	private void receiveChallenge() throws IOException{
+		byte[] message = aesChannel.read();
+		state = State.AWAITING_AUTHENTICATION;
+		if(!Arrays.equals(message,expectedChallenge)){
+			aesChannel.write("Authentication failed: Challenges not equal!".getBytes());
+		}
+		else{
+			user = cloudController.setUserOnline(username);
+			if(user != null){
+				state = State.AUTHENTICATED;
+				aesChannel.write("Successfully authenticated!".getBytes());
+			}
+			else{
+				aesChannel.write("You are already authenticated somewhere else!".getBytes());
+			}
+		}
+	}
+
+	/**
+	 * Handles a request of an authenticated user.
+	 * @param request
+	 * @return the response which is sent back to the client
+	 */
+	private String handleRequest(String request){
+		String response="";
+		String[] partsOfTheRequest = request.split("\\s+");
+
+		//handle !logout request
+		if(partsOfTheRequest[0].equals("!logout")){
+			if(partsOfTheRequest.length != 1){
+				response ="No parameters allowed!";
+			}
+			else{
+				if(sessionTickets != null){
+					sessionTickets.revoke(user.getUsername());
+				}
+				cloudController.setUserOffline(user);
+				user = null;
+				state = State.AWAITING_AUTHENTICATION;
+				response = "Logged out successfully.";
+			}
+		}
+
+		//handle !ticket request
+		else if(partsOfTheRequest[0].equals(SessionResumption.TICKET)){
+			if(partsOfTheRequest.length != 1){
+				response ="No parameters allowed!";
+			}
+			else if(sessionTickets == null){
+				response = "Could not issue a ticket.";
+			}
+			else{
+				byte[] secret = SessionResumption.newNonce();
+				try {
+					response = SessionResumption.TICKET+" "+sessionTickets.issue(user.getUsername(), secret)+" "+new String(Base64.encode(secret));
+				}
+				catch (GeneralSecurityException e) {
+					response = "Could not issue a ticket.";
+				}
+			}
+		}
+
+		//handle !credits request
+		else if(partsOfTheRequest[0].equals("!credits")){
+			if(partsOfTheRequest.length != 1){
+				response ="No parameters allowed!";
+			}
+			else{
+				response = "You have "+cloudController.getCredits(user)+ " credits left.";
+			}
+		}
+
+		//handle !buy request
+		else if(partsOfTheRequest[0].equals("!buy")){
+			if(partsOfTheRequest.length != 2){
+				response ="Too many parameters!!";
+			}
+			else if(Long.valueOf(partsOfTheRequest[1]).longValue()<=0){
+				response = "The amount of credits should be greater than 0!";
+			}
+			else{
+				response = "You now have "+cloudController.buyCredits(user,Long.valueOf(partsOfTheRequest[1]).longValue())+ " credits.";
+			}
+		}
+
+		//handle !list request
+		else if(partsOfTheRequest[0].equals("!list")){
+			if(partsOfTheRequest.length != 1){
+				response ="Too many parameters!!";
+			}
+			else{
+				response = cloudController.getAvailableOperations();
+			}
+		}
+
+		//handle !compute request
+		else if(partsOfTheRequest[0].equals("!compute")){
+			cloudController.increaseStatistics(request);
+			try {
+				TermNode term = termPlanner.plan(Arrays.copyOfRange(partsOfTheRequest, 1, partsOfTheRequest.length));
+				CreditLedger.Reservation reservation = cloudController.reserveCredits(user, term.getNrOfOperations()*50);
+				if(reservation == null){
+					response = "You don't have enough credits to perform this operation.";
+				}
+				else{
+					AtomicInteger nrOfOperations = new AtomicInteger();
+					try {
+						response = termEvaluator.evaluate(term, nrOfOperations);
+					}
+					finally {
+						cloudController.settleCredits(reservation, 50*nrOfOperations.get());
+					}
+				}
+			}
+			catch(ComputeException e){
+				response = e.getMessage();
+			}
+		}
+		return response;
+	}
+}
@@ -1,19 +1,22 @@
 package controller;
 
 import util.Config;
+import util.ExecutorFactory;
+import util.Keys;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.InetAddress;
+import java.security.GeneralSecurityException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import admin.INotificationCallback;
 import model.NodeInfo;
@@ -32,18 +35,55 @@ public class CloudController implements ICloudControllerCli, Runnable {
 	private String key;
 	private String hmacKey;
 	private String keysDir;
+	private int ticketLifetime;
+	private SessionTickets sessionTickets;
+	private int handshakeThreads;
+	private int handshakeQueueSize;
+	private String handshakeAdmission;
+	private int handshakeAdmissionTimeout;
+	private HandshakePool handshakePool;
 	private String bindingName;
 	private String controllerHost;
 	private int controllerRmiPort;
+	private int logsTimeout;
+	private int logsIdleTimeout;
 	private int controllerRmax;
-	private ArrayList<UserInfo> users;
-	private CopyOnWriteArrayList<NodeInfo> nodes;
+	private int nodePoolSize;
+	private int nodePoolIdleTimeout;
+	private int nodePoolMaxConnections;
+	private int nodeTimeoutMillis;
+	private boolean nodeFraming;
+	private String clientListenerType;
+	private int nioIoThreads;
+	private int nioWorkerThreads;
+	private int nioHandshakeTimeout;
+	private int nioIdleTimeout;
+	private String computeMode;
+	private boolean computeBatch;
+	private String nodeSelection;
+	private NodeSelectionStrategy nodeSelectionStrategy;
+	private UserDirectory users;
+	private CreditLedger creditLedger;
+	private CreditLog creditLog;
+	private boolean creditLogEnabled;
+	private String creditLogDir;
+	private int creditLogSnapshotRecords;
+	private int creditLogQueueCapacity;
+	private String usersFile;
+	private NodeRegistry nodeRegistry;
 	private LinkedHashMap<Character, Long> statistics;
 	private Shell shell;
-	private ClientListener clientListener;
+	private IClientListener clientListener;
 	private NodeListener nodeListener;
 	private NodeIsAliveChecker nodeIsAliveChecker;
 	private AdminService adminService;
+	private NodeConnectionPool nodeConnectionPool;
+	private TermPlanner termPlanner;
+	private TermEvaluator termEvaluator;
+	private ExecutorService computeExecutor;
+	private ExecutorService adminExecutor;
+	private ScheduledExecutorService adminScheduler;
+	private ExecutorFactory executorFactory;
 	private ExecutorService executor;
 
 	
@@ -61,14 +101,15 @@ public class CloudController implements ICloudControllerCli, Runnable {
 		this.componentName = componentName;
 		this.config = config;
 		this.shell = new Shell(componentName, userRequestStream, userResponseStream);
-		this.users = new ArrayList<UserInfo>();
-		this.nodes = new CopyOnWriteArrayList<NodeInfo>();
+		this.users = new UserDirectory();
+		this.nodeRegistry = new NodeRegistry();
 		this.statistics = new LinkedHashMap<Character, Long>();
 		statistics.put('+', (long) 0);
 		statistics.put('-', (long) 0);
 		statistics.put('*', (long) 0);
 		statistics.put('/', (long) 0);
-		this.executor = Executors.newCachedThreadPool();
+		this.executorFactory = new ExecutorFactory(config);
+		this.executor = executorFactory.newServiceExecutor();
 	}
 
 	/**
@@ -82,38 +123,46 @@ public class CloudController implements ICloudControllerCli, Runnable {
 		hmacKey = config.getString("hmac.key");
 		key = config.getString("key");
 		keysDir = config.getString("keys.dir");
+		ticketLifetime = config.getInt("ticket.lifetime");
+		handshakeThreads = config.getInt("handshake.threads");
+		handshakeQueueSize = config.getInt("handshake.queueSize");
+		handshakeAdmission = config.getString("handshake.admission");
+		handshakeAdmissionTimeout = config.getInt("handshake.admissionTimeout");
 		bindingName = config.getString("binding.name");
 		controllerHost = config.getString("controller.host");
 		controllerRmiPort = config.getInt("controller.rmi.port");
+		logsTimeout = config.getInt("logs.timeout");
+		logsIdleTimeout = config.getInt("logs.idleTimeout");
 		controllerRmax = config.getInt("controller.rmax");
+		nodePoolSize = config.getInt("node.pool.size");
+		nodePoolIdleTimeout = config.getInt("node.pool.idleTimeout");
+		nodePoolMaxConnections = config.getInt("node.pool.maxConnections");
+		nodeTimeoutMillis = config.getInt("node.pool.timeout");
+		nodeFraming = Boolean.parseBoolean(config.getString("node.framing"));
+		clientListenerType = config.getString("client.listener");
+		nioIoThreads = config.getInt("client.nio.ioThreads");
+		nioWorkerThreads = config.getInt("client.nio.workerThreads");
+		nioHandshakeTimeout = config.getInt("client.nio.handshakeTimeout");
+		nioIdleTimeout = config.getInt("client.nio.idleTimeout");
+		computeMode = config.getString("compute.mode");
+		computeBatch = Boolean.parseBoolean(config.getString("compute.batch"));
+		nodeSelection = config.getString("node.selection");
+		creditLogEnabled = Boolean.parseBoolean(config.getString("credits.log.enabled"));
+		creditLogDir = config.getString("credits.log.dir");
+		creditLogSnapshotRecords = config.getInt("credits.log.snapshotRecords");
+		creditLogQueueCapacity = config.getInt("credits.log.queueCapacity");
+		usersFile = config.getString("users.file");
 	}
 
 	/**
-	 * Reads for each user the username, password and credits from the user.properties file.
+	 * Reads for each user the username, password and credits from the users.file file. See {@link UserLoader} for the supported formats.
 	 */
 	private void readUserProperties(){
-		ArrayList<String> usernames = new ArrayList<String>();
-		BufferedReader br = null;
 		try {
-			br = new BufferedReader(new FileReader("src/main/resources/user.properties"));
-			String line = br.readLine();
-			while(line != null){
-				if(line.indexOf(".credits")!= -1){
-					usernames.add(line.substring(0, line.indexOf(".credits")));
-				}
-				line = br.readLine();
-			}
-		} 
-		catch (IOException e) {}
-		finally {
-			try {
-				br.close();
-			} 
-			catch (IOException e) {}
+			UserLoader.load(usersFile, users);
 		}
-		Config userConfig = new Config("user");
-		for(String username : usernames){
-			users.add(new UserInfo(username, userConfig.getString(username+".password"),userConfig.getInt(username+".credits"), false));
+		catch (IOException e) {
+			System.err.println("Could not read the users from "+usersFile+": "+e.getMessage());
 		}
 	}
 
@@ -126,10 +175,73 @@ public class CloudController implements ICloudControllerCli, Runnable {
 	}
 
 	/**
-	 * Concurrently listens for new connections from the clients. See {@link ClientListener} for more details.
+	 * Parses the keys of the users and of the cloud controller once at startup, so that the handshakes of the clients do not read key files.
+	 */
+	private void preloadKeys(){
+		Keys.preload(new File(keysDir));
+		try {
+			Keys.getPrivatePEM(new File(key));
+			Keys.getSecretKey(new File(hmacKey));
+		}
+		catch (IOException e) {
+			System.err.println("IOException: maybe the file "+key+" or "+hmacKey+" does not exist.");
+		}
+	}
+
+	/**
+	 * Creates the issuer of the session tickets, which are valid for ticket.lifetime seconds. See {@link SessionTickets} for more details.
+	 */
+	private void createSessionTickets(){
+		try {
+			sessionTickets = new SessionTickets(Keys.getPrivatePEM(new File(key)), ticketLifetime*1000L);
+		}
+		catch (IOException e) {
+			System.err.println("IOException: maybe the file "+key+" does not exist.");
+		}
+		catch (GeneralSecurityException e) {
+			System.err.println("Could not create the session ticket key: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates the pool of connections to the nodes, which is shared by all client handlers. See {@link NodeConnectionPool} for more details.
+	 */
+	private void createNodeConnectionPool(){
+		try {
+			nodeConnectionPool = new NodeConnectionPool(hmacKey, nodePoolSize, nodePoolIdleTimeout, nodeFraming, nodePoolMaxConnections, nodeTimeoutMillis);
+		}
+		catch (IOException e) {
+			System.err.println("IOException: maybe the file "+hmacKey+" does not exist.");
+		}
+	}
+
+	/**
+	 * Creates the planner and evaluator of the terms of !compute requests. See {@link TermPlanner} and {@link TermEvaluator} for more details.
+	 */
+	private void createTermEvaluator(){
+		termPlanner = new TermPlanner(computeMode);
+		computeExecutor = executorFactory.newExecutor();
+		termEvaluator = new TermEvaluator(this, nodeConnectionPool, computeExecutor, computeBatch);
+	}
+
+	/**
+	 * Creates the pool of threads for the RSA part of the handshakes of the clients. See {@link HandshakePool} for more details.
+	 */
+	private void createHandshakePool(){
+		handshakePool = new HandshakePool(handshakeThreads, handshakeQueueSize, handshakeAdmission, handshakeAdmissionTimeout);
+	}
+
+	/**
+	 * Concurrently listens for new connections from the clients. See {@link ClientListener} for more details,
+	 * or {@link NioClientListener} if client.listener is set to nio.
 	 */
 	private void startClientListener(){
-		clientListener = new ClientListener(tcpPort, this, key, hmacKey, keysDir);
+		if(clientListenerType.equals("nio")){
+			clientListener = new NioClientListener(tcpPort, this, key, termPlanner, termEvaluator, keysDir, sessionTickets, handshakePool, executorFactory, nioIoThreads, nioWorkerThreads, nioHandshakeTimeout, nioIdleTimeout);
+		}
+		else{
+			clientListener = new ClientListener(tcpPort, this, key, termPlanner, termEvaluator, keysDir, sessionTickets, handshakePool, executorFactory);
+		}
 		executor.submit(clientListener);
 	}
 
@@ -149,64 +261,106 @@ public class CloudController implements ICloudControllerCli, Runnable {
 		executor.submit(nodeIsAliveChecker);
 	}
 
+	/**
+	 * Creates the ledger, which performs all changes of the credits. If credits.log.enabled is set, the credits are restored from
+	 * and written to the {@link CreditLog} in credits.log.dir.
+	 */
+	private void createCreditLedger(){
+		if(creditLogEnabled){
+			creditLog = new CreditLog(creditLogDir, creditLogSnapshotRecords, creditLogQueueCapacity, shell);
+			try {
+				creditLog.open(users);
+				executor.submit(creditLog);
+			}
+			catch (IOException e) {
+				System.err.println("Could not open the credit log in "+creditLogDir+", credits are not persisted: "+e.getMessage());
+				creditLog = null;
+			}
+		}
+		creditLedger = new CreditLedger(creditLog);
+	}
+
 	/**
 	 * Starts the AdminService, which communicates with the admin console via RMI.
 	 */
 	private void startAdminService(){
 		try {
-			this.adminService = new AdminService(this, bindingName, controllerHost, controllerRmiPort);
+			adminExecutor = executorFactory.newExecutor();
+			adminScheduler = Executors.newSingleThreadScheduledExecutor();
+			this.adminService = new AdminService(this, bindingName, controllerHost, controllerRmiPort, adminExecutor, adminScheduler, logsTimeout, logsIdleTimeout);
 		} catch (RemoteException e) {}
 	}
 
 	/**
 	 * Sets the status of a user to online if this user is not online
 	 * @param username
-	 * @param password
-	 * @return the position on the list of a user, if this user wasn't online, -1 if he was already online.
-	 */
-	public synchronized int setUserOnline(String username){
-		for(UserInfo u : users){
-			if(u.getUsername().equals(username)){
-				if(!u.isOnline()){
-					u.setStatus(true);
-					return users.indexOf(u);
-				}
-			}
+	 * @return the user, which is the handle of the session, if this user wasn't online, null if he was already online or does not exist.
+	 */
+	public UserInfo setUserOnline(String username){
+		UserInfo user = users.get(username);
+		if(user != null && user.goOnline()){
+			return user;
 		}
-		return -1;
+		return null;
 	}
 
 	/**
 	 * Sets the users status to offline.
-	 * @param position
-	 * 			the position on the list of the user
+	 * @param user
+	 * 			the user returned by {@link #setUserOnline(String) setUserOnline}
 	 */
-	public void setUserOffline(int position){
-		users.get(position).setStatus(false);
+	public void setUserOffline(UserInfo user){
+		user.setStatus(false);
 	}
 
 	/**
 	 * Gives the amount of credits that a user currently has.
-	 * @param position
-	 * 			the position on the list of the user
+	 * @param user
+	 * 			the user returned by {@link #setUserOnline(String) setUserOnline}
 	 * @return the amount of credits the user currently has
 	 */
-	public long getCredits(int position){
-		return users.get(position).getCredits();
+	public long getCredits(UserInfo user){
+		return user.getCredits();
+	}
+
+	/**
+	 * Increases the number of credits of a user
+	 * @param user
+	 * 			the user returned by {@link #setUserOnline(String) setUserOnline}
+	 * @param credits
+	 * 			amount of credits a user wants to buy
+	 * @return	the new amount of credits the user now has
+	 */
+	public long buyCredits(UserInfo user, long credits){
+		long newCredits = creditLedger.deposit(user, credits);
+		notifyAdmin(user);
+		return newCredits;
+	}
+
+	/**
+	 * Withdraws the maximum cost of a request from the credits of a user. See {@link CreditLedger} for more details.
+	 * @param user
+	 * 			the user returned by {@link #setUserOnline(String) setUserOnline}
+	 * @param credits
+	 * 			the maximum cost of the request
+	 * @return the reservation or null if the user does not have enough credits
+	 */
+	public CreditLedger.Reservation reserveCredits(UserInfo user, long credits){
+		return creditLedger.reserve(user, credits);
 	}
 
 	/**
-	 * Increases or decreases the number of credits of a user
-	 * @param position
-	 * 			the position on the list of the user
+	 * Charges the actual cost of a request and gives the rest of the reservation back.
+	 * @param reservation
+	 * 			the reservation returned by {@link #reserveCredits(UserInfo, long) reserveCredits}
 	 * @param credits
-	 * 			amount of credits a user wants to add or substract
+	 * 			the actual cost of the request
 	 * @return	the new amount of credits the user now has
 	 */
-	public long modifyCredits(int position, long credits){
-		users.get(position).setCredits(users.get(position).getCredits()+credits);
-		notifyAdmin(position);
-		return users.get(position).getCredits();
+	public long settleCredits(CreditLedger.Reservation reservation, long credits){
+		long newCredits = creditLedger.settle(reservation, credits);
+		notifyAdmin(reservation.getUser());
+		return newCredits;
 	}
 
 	/**
@@ -214,7 +368,7 @@ public class CloudController implements ICloudControllerCli, Runnable {
 	 */
 	public String getAvailableOperations(){
 		String tmp = "";
-		for(NodeInfo node : nodes){
+		for(NodeInfo node : nodeRegistry.getNodes()){
 			if(node.isOnline()){
 				tmp = tmp + node.getOperators();
 			}
@@ -240,49 +394,54 @@ public class CloudController implements ICloudControllerCli, Runnable {
 	 * 			the last time the node sent a message.
 	 */
 	public void updateNodes(InetAddress address, int tcpPort, String operators, long time){
-		for(NodeInfo node : nodes){
-			if(node.getAddress().getHostAddress().equals(address.getHostAddress())&&node.getTcpPort()==tcpPort){
-				node.setLastSeen(time);
-				node.setStatus(true);
-				return;
-			}
-		}
-		nodes.add(new NodeInfo(address, tcpPort, operators, 0, true, time));
+		nodeRegistry.update(address, tcpPort, operators, time);
 	}
 
 	/**
-	 * If no isAlive packet is received within nodeTimeout milliseconds until the actual time, a node's status is set to offline.
+	 * If no isAlive packet is received within nodeTimeout milliseconds until the actual time, a node's status is set to offline
+	 * and its pooled connections are closed. Idle connections to the other nodes are evicted as well.
 	 */
 	public void checkIfNodesAreAlive(){
-		for(NodeInfo node : nodes){
+		for(NodeInfo node : nodeRegistry.getNodes()){
 			if(System.currentTimeMillis()-node.getLastSeen()>nodeTimeout){
 				node.setStatus(false);
+				nodeConnectionPool.closeConnections(node);
 			}
 		}
+		nodeConnectionPool.evictIdleConnections();
+	}
+
+	/**
+	 * Creates the strategy which selects the node for each operation, depending on the node.selection property.
+	 */
+	private void createNodeSelectionStrategy(){
+		if(nodeSelection.equals("powerOfTwo")){
+			nodeSelectionStrategy = new PowerOfTwoChoicesStrategy(nodeRegistry);
+		}
+		else if(nodeSelection.equals("leastOutstanding")){
+			nodeSelectionStrategy = new LeastOutstandingRequestsStrategy(nodeRegistry);
+		}
+		else if(nodeSelection.equals("latency")){
+			nodeSelectionStrategy = new LatencyWeightedStrategy(nodeRegistry);
+		}
+		else if(nodeSelection.equals("consistentHash")){
+			nodeSelectionStrategy = new ConsistentHashStrategy(nodeRegistry);
+		}
+		else{
+			nodeSelectionStrategy = new LeastUsageStrategy(nodeRegistry);
+		}
 	}
 
 	/**
-	 * Finds the node with the lowest usage for a given operator.
+	 * Finds the node which should compute an operation. See {@link NodeSelectionStrategy} for more details.
 	 * @param operator 
 	 * 			the given operator
-	 * @return the node with the lowest usage or null if no such node exists
+	 * @param operand
+	 * 			the right operand of the operation
+	 * @return the selected node or null if no online node supports the operator
 	 */
-	public NodeInfo getNodeWithLowestUsage(String operator){
-		NodeInfo nodeWithLowestUsage = null;
-		for(NodeInfo node : nodes){
-			if(nodeWithLowestUsage == null && node.isOnline()){
-				if(node.getOperators().contains(operator)){
-					nodeWithLowestUsage = node;
-				}
-
-			}
-			else if(node.isOnline() && node.getUsage()<nodeWithLowestUsage.getUsage()){
-				if(node.getOperators().contains(operator)){
-					nodeWithLowestUsage = node;
-				}
-			}
-		}
-		return nodeWithLowestUsage;
+	public NodeInfo selectNode(String operator, String operand){
+		return nodeSelectionStrategy.select(operator, operand);
 	}
 
 	/**
@@ -291,7 +450,7 @@ public class CloudController implements ICloudControllerCli, Runnable {
 	 */
 	public String prepareInfoMessage(){
 		String infos ="!init";
-		for(NodeInfo node: nodes){
+		for(NodeInfo node: nodeRegistry.getNodes()){
 			if(node.isOnline()){
 				infos = infos + " " + node.getAddress().getHostAddress()+":"+node.getTcpPort();
 			}
@@ -333,7 +492,7 @@ public class CloudController implements ICloudControllerCli, Runnable {
 	 */
 	public ArrayList<NodeInfo> getOnlineNodes(){
 		ArrayList<NodeInfo> nodes = new ArrayList<NodeInfo>();
-		for(NodeInfo nodeInfo : this.nodes){
+		for(NodeInfo nodeInfo : nodeRegistry.getNodes()){
 			if(nodeInfo.isOnline()){
 				nodes.add(nodeInfo);
 			}
@@ -353,24 +512,18 @@ public class CloudController implements ICloudControllerCli, Runnable {
 		if(credits<1){
 			return false;
 		}
-		for(UserInfo u : users){
-			if(u.getUsername().equals(username) && u.getCallback()!=null){
-				return false;
-			}
-			if(u.getUsername().equals(username) && u.getCallback()==null){
-				u.subscribe(callback, credits);
-				return true;
-			}
+		UserInfo user = users.get(username);
+		if(user == null){
+			return false;
 		}
-		return false;
+		return user.subscribe(callback, credits);
 	}
 	
 	/**
 	 * Notifies the admin if the credits of the given user fell below the threshold of this user.
-	 * @param position the position of the user on the list.
+	 * @param user the user whose credits changed.
 	 */
-	private void notifyAdmin(int position){
-		UserInfo user = users.get(position);
+	private void notifyAdmin(UserInfo user){
 		INotificationCallback callback = user.getCallback();
 		if(callback!=null && user.getCredits()<user.getThreshold()){
 			try {
@@ -387,6 +540,13 @@ public class CloudController implements ICloudControllerCli, Runnable {
 	public void run() {
 		readCloudControllerProperties();
 		readUserProperties();
+		preloadKeys();
+		createSessionTickets();
+		createCreditLedger();
+		createNodeConnectionPool();
+		createNodeSelectionStrategy();
+		createTermEvaluator();
+		createHandshakePool();
 		startShell();
 		startClientListener();
 		startNodeListener();
@@ -397,6 +557,7 @@ public class CloudController implements ICloudControllerCli, Runnable {
 	@Command(value="nodes")
 	@Override
 	public String nodes() throws IOException {
+		List<NodeInfo> nodes = nodeRegistry.getNodes();
 		if(nodes.size()==0){
 			return "No nodes found";
 		}
@@ -410,6 +571,7 @@ public class CloudController implements ICloudControllerCli, Runnable {
 	@Command(value="users")
 	@Override
 	public String users() throws IOException {
+		List<UserInfo> users = this.users.getUsers();
 		if(users.size()==0){
 			return "No users found";
 		}
@@ -427,8 +589,14 @@ public class CloudController implements ICloudControllerCli, Runnable {
 		clientListener.stopRunning();
 		nodeListener.stopRunning();
 		nodeIsAliveChecker.stopRunning();
+		if(creditLog != null) creditLog.close();
 		executor.shutdown();
+		computeExecutor.shutdown();
+		handshakePool.shutdown();
+		nodeConnectionPool.close();
 		adminService.close();
+		if(adminExecutor != null) adminExecutor.shutdown();
+		if(adminScheduler != null) adminScheduler.shutdown();
 		return "Shutting down "+componentName+" now.";
 	}
 
@@ -0,0 +1,23 @@
+package controller;
+
+/**
+ * Thrown if a term can't be computed. The message is sent back to the client.
+ */
+public class ComputeException extends Exception {
+
+	private static final long serialVersionUID = 3562210473458307641L;
+	private boolean charged;
+
+	/**
+	 * @param message the response for the client
+	 * @param charged true if the operations performed so far are still charged, e.g. after a division by 0
+	 */
+	public ComputeException(String message, boolean charged) {
+		super(message);
+		this.charged = charged;
+	}
+
+	public boolean isCharged() {
+		return charged;
+	}
+}
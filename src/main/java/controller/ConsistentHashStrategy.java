@@ -0,0 +1,46 @@
+package controller;
+
+import model.NodeInfo;
+
+/**
+ * Maps the right operand to one of the online nodes by rendezvous hashing: every node gets a score from the hash of the operand and its address,
+ * and the node with the highest score is selected. An operand therefore sticks to the same node, and if a node goes offline or joins,
+ * only the operands of that node move.
+ */
+public class ConsistentHashStrategy implements NodeSelectionStrategy {
+
+	private NodeRegistry nodeRegistry;
+
+	public ConsistentHashStrategy(NodeRegistry nodeRegistry) {
+		this.nodeRegistry = nodeRegistry;
+	}
+
+	@Override
+	public NodeInfo select(String operator, String operand) {
+		NodeInfo selected = null;
+		long highestScore = Long.MIN_VALUE;
+		for(NodeInfo node : nodeRegistry.getNodes(operator)){
+			if(!node.isOnline()){
+				continue;
+			}
+			long score = mix(31L*operand.hashCode() + node.getAddress().getHostAddress().hashCode()*17L + node.getTcpPort());
+			if(selected == null || score>highestScore){
+				selected = node;
+				highestScore = score;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Spreads the bits of the given value (finalizer of MurmurHash3).
+	 */
+	private static long mix(long value){
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+}
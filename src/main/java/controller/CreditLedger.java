@@ -0,0 +1,93 @@
+package controller;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import model.UserInfo;
+
+/**
+ * Performs all changes of the credits of the users. A !compute request reserves its maximum cost before the term is computed
+ * and settles the actual cost afterwards, so the check whether a user has enough credits and the withdrawal are one atomic step.
+ * Every account is updated with compare-and-set, concurrent sessions never wait for each other.
+ * If a {@link CreditLog} is given, every change is appended to it. A reservation is not logged, only the cost it is settled with,
+ * so the credits of a request which is still running when the controller crashes are given back on replay.
+ */
+public class CreditLedger {
+
+	private CreditLog creditLog;
+
+	/**
+	 * @param creditLog the log of the changes, or null if the credits are not persisted
+	 */
+	public CreditLedger(CreditLog creditLog) {
+		this.creditLog = creditLog;
+	}
+
+	/**
+	 * Withdraws the given amount, if the user has enough credits.
+	 * @param user
+	 * @param amount the maximum cost of the request
+	 * @return the reservation, which has to be settled, or null if the user does not have enough credits
+	 */
+	public Reservation reserve(UserInfo user, long amount){
+		if(!user.withdraw(amount)){
+			return null;
+		}
+		return new Reservation(user, amount);
+	}
+
+	/**
+	 * Charges the actual cost of a request and gives the rest of the reservation back to the user. A reservation can only be settled once.
+	 * @param reservation
+	 * @param cost the actual cost of the request
+	 * @return the new amount of credits of the user
+	 */
+	public long settle(Reservation reservation, long cost){
+		if(!reservation.settled.compareAndSet(false, true)){
+			return reservation.user.getCredits();
+		}
+		long credits = reservation.user.addCredits(reservation.amount-cost);
+		log(reservation.user, -cost);
+		return credits;
+	}
+
+	/**
+	 * Adds bought credits to the account of the user.
+	 * @param user
+	 * @param amount
+	 * @return the new amount of credits of the user
+	 */
+	public long deposit(UserInfo user, long amount){
+		long credits = user.addCredits(amount);
+		log(user, amount);
+		return credits;
+	}
+
+	private void log(UserInfo user, long delta){
+		if(creditLog != null){
+			creditLog.append(user.getUsername(), delta);
+		}
+	}
+
+	/**
+	 * Credits which were withdrawn from a user for a request that is not finished yet.
+	 */
+	public static class Reservation {
+
+		private UserInfo user;
+		private long amount;
+		private AtomicBoolean settled = new AtomicBoolean();
+
+		private Reservation(UserInfo user, long amount) {
+			this.user = user;
+			this.amount = amount;
+		}
+
+		public UserInfo getUser() {
+			return user;
+		}
+
+		public long getAmount() {
+			return amount;
+		}
+	}
+}
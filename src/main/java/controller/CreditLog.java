@@ -0,0 +1,403 @@
+package controller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import cli.Shell;
+import model.UserInfo;
+
+/**
+ * Write-ahead log of the credits of the users, which lets the credits survive a restart of the cloud controller.
+ * <p>
+ * Every change of the credits is appended as a binary record (username, delta, CRC32) to the current log file by a single writer thread.
+ * The writer takes all records that were queued while it was busy and writes them with one fsync (group commit).
+ * {@link #append(String, long) append} waits until the group of its record was forced to the disk, so a change is durable before the user is answered,
+ * while concurrent changes still share one fsync.
+ * <p>
+ * The writer applies the records to its own copy of the balances, from which it takes a snapshot every credits.log.snapshotRecords records.
+ * A snapshot with generation g contains all logs up to g-1, afterwards the writer continues with the log of generation g and deletes the older ones.
+ * On startup the latest snapshot and the logs written after it are replayed, stopping at the first incomplete or corrupt record.
+ * <p>
+ * At most credits.log.queueCapacity records wait for the writer, {@link #append(String, long) append} waits while the queue is full.
+ * If the writer fails, the log is disabled: the queued records are discarded, further records are ignored and the failure is reported on the shell.
+ * Appends which wait for discarded records return as well.
+ */
+public class CreditLog implements Runnable {
+
+	private static final int SNAPSHOT_MAGIC = 0x43524544;
+	private static final String SNAPSHOT = "credits.snapshot";
+	private static final String LOG_PREFIX = "credits-";
+	private static final String LOG_SUFFIX = ".log";
+	private static final int MAX_RECORD_LENGTH = 1024;
+
+	private volatile boolean running = true;
+	private volatile boolean failed;
+	private File dir;
+	private int snapshotRecords;
+	private LinkedBlockingQueue<Record> queue;
+	private Map<String, Long> balances;
+	private long generation;
+	private FileChannel log;
+	private int recordsSinceSnapshot;
+	private CountDownLatch stopped;
+	private Shell shell;
+
+	/**
+	 * @param dir the directory of the logs and the snapshot
+	 * @param snapshotRecords the number of records after which a snapshot is taken
+	 * @param queueCapacity the maximum number of records waiting for the writer
+	 * @param shell the shell on which a failure of the writer is reported
+	 */
+	public CreditLog(String dir, int snapshotRecords, int queueCapacity, Shell shell) {
+		this.dir = new File(dir);
+		this.snapshotRecords = snapshotRecords;
+		this.queue = new LinkedBlockingQueue<Record>(queueCapacity);
+		this.shell = shell;
+		this.balances = new HashMap<String, Long>();
+		this.stopped = new CountDownLatch(1);
+	}
+
+	/**
+	 * Restores the credits of the users from the latest snapshot and the logs written after it.
+	 * Afterwards a new snapshot is taken, so every start continues with an empty log.
+	 * @param users the users with the credits of the user.properties file
+	 * @throws IOException if the directory can't be written
+	 */
+	public void open(UserDirectory users) throws IOException {
+		dir.mkdirs();
+		for(UserInfo user : users.getUsers()){
+			balances.put(user.getUsername(), user.getCredits());
+		}
+		generation = readSnapshot();
+		for(long logGeneration : listLogs()){
+			if(logGeneration >= generation){
+				replay(logFile(logGeneration));
+				generation = logGeneration;
+			}
+		}
+		for(Map.Entry<String, Long> balance : balances.entrySet()){
+			UserInfo user = users.get(balance.getKey());
+			if(user != null){
+				user.setCredits(balance.getValue());
+			}
+		}
+		takeSnapshot();
+	}
+
+	/**
+	 * Queues a change of the credits of a user and waits until it was forced to the disk. Waits while the queue is full,
+	 * the change is ignored if the log was disabled or is closed.
+	 * @param username
+	 * @param delta the amount of credits which was added, negative if credits were withdrawn
+	 */
+	public void append(String username, long delta){
+		if(delta == 0){
+			return;
+		}
+		Record record = new Record(username, delta);
+		try {
+			while(!failed && !queue.offer(record, 100, TimeUnit.MILLISECONDS));
+			//a record, which is queued after the writer stopped, is never written
+			while(!failed && !record.written.await(100, TimeUnit.MILLISECONDS) && stopped.getCount()>0);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Writes the remaining records, takes a final snapshot and stops the writer.
+	 */
+	public void close(){
+		running = false;
+		try {
+			stopped.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {}
+	}
+
+	/**
+	 * Writes the queued records until the log is closed.
+	 */
+	@Override
+	public void run() {
+		List<Record> batch = new ArrayList<Record>();
+		try {
+			while(running || !queue.isEmpty()){
+				Record record = queue.poll(100, TimeUnit.MILLISECONDS);
+				if(record == null){
+					continue;
+				}
+				batch.add(record);
+				queue.drainTo(batch);
+				write(batch);
+				for(Record done : batch){
+					done.written.countDown();
+				}
+				batch.clear();
+				if(recordsSinceSnapshot >= snapshotRecords){
+					takeSnapshot();
+				}
+			}
+			takeSnapshot();
+		}
+		catch (InterruptedException e) {}
+		catch (IOException e) {
+			disable(e);
+		}
+		finally {
+			for(Record record : batch){
+				record.written.countDown();
+			}
+			try {
+				if(log != null) log.close();
+			}
+			catch (IOException e) {}
+			stopped.countDown();
+		}
+	}
+
+	/**
+	 * Stops accepting records after the writer failed and reports it on the shell.
+	 */
+	private void disable(IOException e){
+		failed = true;
+		running = false;
+		Record record;
+		while((record = queue.poll()) != null){
+			record.written.countDown();
+		}
+		String message = "Could not write the credit log in "+dir+", credits are no longer persisted: "+e.getMessage();
+		System.err.println(message);
+		try {
+			shell.writeLine(message);
+		}
+		catch (IOException e1) {}
+	}
+
+	/**
+	 * Appends the records to the log with a single fsync and applies them to the balances.
+	 */
+	private void write(List<Record> batch) throws IOException {
+		List<byte[]> encoded = new ArrayList<byte[]>();
+		int size = 0;
+		for(Record record : batch){
+			byte[] bytes = record.encode();
+			encoded.add(bytes);
+			size = size + bytes.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		for(byte[] bytes : encoded){
+			buffer.put(bytes);
+		}
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			log.write(buffer);
+		}
+		log.force(false);
+		for(Record record : batch){
+			apply(record);
+		}
+		recordsSinceSnapshot = recordsSinceSnapshot + batch.size();
+	}
+
+	private void apply(Record record){
+		Long balance = balances.get(record.username);
+		balances.put(record.username, (balance == null ? 0 : balance) + record.delta);
+	}
+
+	/**
+	 * Writes the balances as snapshot of the next generation, starts the log of that generation and deletes the older logs.
+	 */
+	private void takeSnapshot() throws IOException {
+		if(log != null){
+			log.close();
+		}
+		generation++;
+		File tmp = new File(dir, SNAPSHOT+".tmp");
+		FileOutputStream fileOut = new FileOutputStream(tmp);
+		CheckedOutputStream checkedOut = new CheckedOutputStream(new BufferedOutputStream(fileOut), new CRC32());
+		DataOutputStream out = new DataOutputStream(checkedOut);
+		try {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeLong(generation);
+			out.writeInt(balances.size());
+			for(Map.Entry<String, Long> balance : balances.entrySet()){
+				out.writeUTF(balance.getKey());
+				out.writeLong(balance.getValue());
+			}
+			out.writeLong(checkedOut.getChecksum().getValue());
+			out.flush();
+			fileOut.getChannel().force(true);
+		}
+		finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), new File(dir, SNAPSHOT).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		log = FileChannel.open(logFile(generation).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		for(long logGeneration : listLogs()){
+			if(logGeneration<generation){
+				logFile(logGeneration).delete();
+			}
+		}
+		recordsSinceSnapshot = 0;
+	}
+
+	/**
+	 * Reads the snapshot into the balances.
+	 * @return the generation of the snapshot, 0 if there is no valid snapshot
+	 */
+	private long readSnapshot(){
+		File file = new File(dir, SNAPSHOT);
+		if(!file.exists()){
+			return 0;
+		}
+		Map<String, Long> snapshot = new HashMap<String, Long>();
+		CheckedInputStream checkedIn = null;
+		try {
+			checkedIn = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32());
+			DataInputStream in = new DataInputStream(checkedIn);
+			if(in.readInt() != SNAPSHOT_MAGIC){
+				throw new IOException("not a snapshot");
+			}
+			long snapshotGeneration = in.readLong();
+			int count = in.readInt();
+			for(int i = 0; i<count; i++){
+				snapshot.put(in.readUTF(), in.readLong());
+			}
+			long checksum = checkedIn.getChecksum().getValue();
+			if(in.readLong() != checksum){
+				throw new IOException("checksum mismatch");
+			}
+			balances.putAll(snapshot);
+			return snapshotGeneration;
+		}
+		catch (IOException e) {
+			System.err.println("Ignoring the corrupt credit snapshot "+file+": "+e.getMessage());
+			return 0;
+		}
+		finally {
+			try {
+				if(checkedIn != null) checkedIn.close();
+			}
+			catch (IOException e) {}
+		}
+	}
+
+	/**
+	 * Applies the records of a log to the balances, until the end of the log or the first incomplete or corrupt record.
+	 */
+	private void replay(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			while(true){
+				int length = in.readInt();
+				if(length<Record.MIN_LENGTH || length>MAX_RECORD_LENGTH){
+					return;
+				}
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				int checksum = in.readInt();
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if((int) crc.getValue() != checksum){
+					return;
+				}
+				apply(Record.decode(payload));
+			}
+		}
+		catch (EOFException e) {}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the generations of the existing logs in ascending order
+	 */
+	private List<Long> listLogs(){
+		List<Long> generations = new ArrayList<Long>();
+		String[] names = dir.list();
+		if(names == null){
+			return generations;
+		}
+		for(String name : names){
+			if(name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX)){
+				try {
+					generations.add(Long.valueOf(name.substring(LOG_PREFIX.length(), name.length()-LOG_SUFFIX.length())));
+				}
+				catch (NumberFormatException e) {}
+			}
+		}
+		Collections.sort(generations);
+		return generations;
+	}
+
+	private File logFile(long generation){
+		return new File(dir, LOG_PREFIX+generation+LOG_SUFFIX);
+	}
+
+	/**
+	 * A change of the credits of a user. Encoded as length, payload (length of the username, username, delta) and CRC32 of the payload.
+	 */
+	private static class Record {
+
+		private static final int MIN_LENGTH = 2+8;
+
+		private String username;
+		private long delta;
+		private CountDownLatch written = new CountDownLatch(1);
+
+		public Record(String username, long delta) {
+			this.username = username;
+			this.delta = delta;
+		}
+
+		public byte[] encode(){
+			byte[] name = username.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer payload = ByteBuffer.allocate(2+name.length+8);
+			payload.putShort((short) name.length);
+			payload.put(name);
+			payload.putLong(delta);
+			CRC32 crc = new CRC32();
+			crc.update(payload.array());
+			ByteBuffer record = ByteBuffer.allocate(4+payload.capacity()+4);
+			record.putInt(payload.capacity());
+			record.put(payload.array());
+			record.putInt((int) crc.getValue());
+			return record.array();
+		}
+
+		public static Record decode(byte[] payload){
+			ByteBuffer buffer = ByteBuffer.wrap(payload);
+			byte[] name = new byte[buffer.getShort()];
+			buffer.get(name);
+			return new Record(new String(name, StandardCharsets.UTF_8), buffer.getLong());
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package controller;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performs the RSA part of the !authenticate handshakes on handshake.threads platform threads, so that a flood of handshakes can't take the CPU
+ * from the threads which serve authenticated sessions.
+ * <p>
+ * At most handshake.queueSize handshakes wait for a free thread. If the queue is full, a new handshake is either rejected at once (handshake.admission=reject)
+ * or waits up to handshake.admissionTimeout milliseconds for a free place (delay). The connection of a rejected handshake is closed.
+ */
+public class HandshakePool {
+
+	public static final String REJECT = "reject";
+	public static final String DELAY = "delay";
+
+	private ExecutorService executor;
+	private Semaphore admissions;
+	private boolean delay;
+	private long admissionTimeout;
+	private int capacity;
+
+	public HandshakePool(int threads, int queueSize, String admission, long admissionTimeout) {
+		this.executor = Executors.newFixedThreadPool(threads);
+		this.capacity = threads + queueSize;
+		this.admissions = new Semaphore(capacity);
+		this.delay = admission.equals(DELAY);
+		this.admissionTimeout = admissionTimeout;
+	}
+
+	/**
+	 * Performs a handshake on one of the handshake threads and waits for its result.
+	 * @param handshake
+	 * @return the result of the handshake
+	 * @throws IOException if the handshake was not admitted or failed
+	 */
+	public <T> T run(Callable<T> handshake) throws IOException {
+		try {
+			boolean admitted = delay ? admissions.tryAcquire(admissionTimeout, TimeUnit.MILLISECONDS) : admissions.tryAcquire();
+			if(!admitted){
+				throw new IOException("Too many handshakes, the handshake was rejected.");
+			}
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		try {
+			return executor.submit(handshake).get();
+		}
+		catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException){
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		catch (RejectedExecutionException e) {
+			throw new IOException(e);
+		}
+		finally {
+			admissions.release();
+		}
+	}
+
+	/**
+	 * @return the maximum number of handshakes which are performed or wait for a thread at the same time
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Stops the handshake threads.
+	 */
+	public void shutdown(){
+		executor.shutdown();
+	}
+}
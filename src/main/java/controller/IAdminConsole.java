@@ -50,6 +50,37 @@ public interface IAdminConsole extends Remote {
 	 */
 	List<ComputationRequestInfo> getLogs() throws RemoteException;
 
+	/**
+	 * Like {@link #getLogs()}, but the requests are handed over in chunks by
+	 * the returned {@link ILogStream} while the logs of the nodes are merged.
+	 *
+	 * @return a remote iterator over the requests of all online nodes
+	 * @throws RemoteException
+	 *             if a remote error occurs
+	 */
+	ILogStream streamLogs() throws RemoteException;
+
+	/**
+	 * Requests a page of the requests which were handled by a single node in
+	 * the given time range. The node only reads the requested page of its log,
+	 * so recent activity can be inspected without transferring the whole log.
+	 *
+	 * @param tcpPort
+	 *            the TCP port of the node, as shown by !nodes
+	 * @param from
+	 *            the earliest timestamp in ms since the epoch, inclusive
+	 * @param to
+	 *            the latest timestamp in ms since the epoch, exclusive
+	 * @param offset
+	 *            the number of requests of the time range which are skipped
+	 * @param limit
+	 *            the maximum number of returned requests
+	 * @return a list of {@link ComputationRequestInfo}, oldest first
+	 * @throws RemoteException
+	 *             if a remote error occurs
+	 */
+	List<ComputationRequestInfo> getLogs(int tcpPort, long from, long to, int offset, int limit) throws RemoteException;
+
 	/**
 	 * Returns a statistics of the operator's frequency in mathematical terms in
 	 * descending order.
@@ -0,0 +1,15 @@
+package controller;
+
+import java.io.IOException;
+
+/**
+ * Accepts the connections of the clients on the cloud controller's tcp port.
+ */
+public interface IClientListener extends Runnable {
+
+	/**
+	 * Stops accepting connections and closes the connections of all clients.
+	 * @throws IOException
+	 */
+	void stopRunning() throws IOException;
+}
@@ -0,0 +1,31 @@
+package controller;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+import model.ComputationRequestInfo;
+
+/**
+ * Remote iterator over the logs of all nodes, which hands them to the admin console in chunks instead of a single list.
+ */
+public interface ILogStream extends Remote {
+	/**
+	 * Returns the next requests in ascending order of their time.
+	 *
+	 * @param max
+	 *            the maximum number of returned requests
+	 * @return the next requests, an empty list if all requests were returned
+	 * @throws RemoteException
+	 *             if a remote error occurs
+	 */
+	List<ComputationRequestInfo> next(int max) throws RemoteException;
+
+	/**
+	 * Closes the connections to the nodes before the end of the logs was reached.
+	 *
+	 * @throws RemoteException
+	 *             if a remote error occurs
+	 */
+	void close() throws RemoteException;
+}
@@ -0,0 +1,33 @@
+package controller;
+
+import model.NodeInfo;
+
+/**
+ * Selects the online node with the lowest expected response time, which is the moving average of its response times
+ * multiplied by the number of requests in flight plus one. Nodes without any answered request are tried first.
+ */
+public class LatencyWeightedStrategy implements NodeSelectionStrategy {
+
+	private NodeRegistry nodeRegistry;
+
+	public LatencyWeightedStrategy(NodeRegistry nodeRegistry) {
+		this.nodeRegistry = nodeRegistry;
+	}
+
+	@Override
+	public NodeInfo select(String operator, String operand) {
+		NodeInfo selected = null;
+		double lowestCost = Double.MAX_VALUE;
+		for(NodeInfo node : nodeRegistry.getNodes(operator)){
+			if(!node.isOnline()){
+				continue;
+			}
+			double cost = (double) node.getLatency() * (node.getOutstandingRequests()+1);
+			if(selected == null || cost<lowestCost){
+				selected = node;
+				lowestCost = cost;
+			}
+		}
+		return selected;
+	}
+}
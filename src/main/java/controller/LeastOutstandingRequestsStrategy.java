@@ -0,0 +1,30 @@
+package controller;
+
+import model.NodeInfo;
+
+/**
+ * Selects the online node with the fewest requests in flight, or the lower usage if several nodes are equally busy.
+ */
+public class LeastOutstandingRequestsStrategy implements NodeSelectionStrategy {
+
+	private NodeRegistry nodeRegistry;
+
+	public LeastOutstandingRequestsStrategy(NodeRegistry nodeRegistry) {
+		this.nodeRegistry = nodeRegistry;
+	}
+
+	@Override
+	public NodeInfo select(String operator, String operand) {
+		NodeInfo selected = null;
+		for(NodeInfo node : nodeRegistry.getNodes(operator)){
+			if(!node.isOnline()){
+				continue;
+			}
+			if(selected == null || node.getOutstandingRequests()<selected.getOutstandingRequests()
+					|| (node.getOutstandingRequests() == selected.getOutstandingRequests() && node.getUsage()<selected.getUsage())){
+				selected = node;
+			}
+		}
+		return selected;
+	}
+}
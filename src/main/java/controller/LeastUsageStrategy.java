@@ -0,0 +1,20 @@
+package controller;
+
+import model.NodeInfo;
+
+/**
+ * Selects the node with the lowest usage, i.e. the node which was charged the fewest credits so far.
+ */
+public class LeastUsageStrategy implements NodeSelectionStrategy {
+
+	private NodeRegistry nodeRegistry;
+
+	public LeastUsageStrategy(NodeRegistry nodeRegistry) {
+		this.nodeRegistry = nodeRegistry;
+	}
+
+	@Override
+	public NodeInfo select(String operator, String operand) {
+		return nodeRegistry.getNodeWithLowestUsage(operator);
+	}
+}
@@ -0,0 +1,185 @@
+package controller;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import model.ComputationRequestInfo;
+import model.NodeInfo;
+
+/**
+ * Merges the logs of several nodes into a single stream in ascending order of time.
+ * The nodes are asked for their logs in parallel. Each node sends its log as a stream, which is already ordered by time (see {@link node.ComputationLog}),
+ * so the streams are merged with a heap of their next entries, ordered by {@link ComputationRequestInfo#getTime() getTime}.
+ * Only one entry per node is held at a time; the rest waits in the sockets.
+ * <p>
+ * Connecting to a node and every read from it may take at most logs.timeout milliseconds, and the first entries of all nodes have to arrive within that time.
+ * A node which does not answer in time is left out.
+ */
+public class LogMerge {
+
+	private PriorityQueue<NodeLog> heap;
+
+	/**
+	 * Connects to the nodes in parallel and reads the first entry of each log.
+	 * @param nodes
+	 * @param request the !getLogs request which is sent to every node
+	 * @param executor
+	 * @param timeout the time in milliseconds a node may take to accept the connection, to send an entry, and to send its first entry in parallel with the others
+	 */
+	public LogMerge(List<NodeInfo> nodes, final String request, ExecutorService executor, final int timeout) {
+		this.heap = new PriorityQueue<NodeLog>(Math.max(nodes.size(), 1), new Comparator<NodeLog>() {
+			@Override
+			public int compare(NodeLog one, NodeLog other) {
+				int byTime = Long.compare(one.next.getTime(), other.next.getTime());
+				return byTime != 0 ? byTime : Integer.compare(one.position, other.position);
+			}
+		});
+		List<NodeLog> logs = new ArrayList<NodeLog>();
+		List<Future<NodeLog>> futures = new ArrayList<Future<NodeLog>>();
+		for(int i = 0; i<nodes.size(); i++){
+			final NodeLog log = new NodeLog(nodes.get(i), i);
+			logs.add(log);
+			futures.add(executor.submit(new Callable<NodeLog>() {
+				@Override
+				public NodeLog call() {
+					log.open(request, timeout);
+					return log;
+				}
+			}));
+		}
+		long deadline = System.currentTimeMillis()+timeout;
+		for(int i = 0; i<futures.size(); i++){
+			try {
+				NodeLog log = futures.get(i).get(Math.max(0, deadline-System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				if(log.next != null){
+					heap.add(log);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logs.get(i).close();
+			}
+			catch (ExecutionException e) {
+				logs.get(i).close();
+			}
+			catch (TimeoutException e) {
+				//closing the socket ends a connect or read which is still blocked
+				logs.get(i).close();
+			}
+		}
+	}
+
+	/**
+	 * @return the oldest entry which was not returned yet, or null at the end of all logs
+	 */
+	public ComputationRequestInfo next(){
+		NodeLog log = heap.poll();
+		if(log == null){
+			return null;
+		}
+		ComputationRequestInfo next = log.next;
+		log.advance();
+		if(log.next != null){
+			heap.add(log);
+		}
+		return next;
+	}
+
+	/**
+	 * @param max
+	 * @return the next at most max entries, an empty list at the end of all logs
+	 */
+	public List<ComputationRequestInfo> next(int max){
+		List<ComputationRequestInfo> chunk = new ArrayList<ComputationRequestInfo>();
+		ComputationRequestInfo next;
+		while(chunk.size()<max && (next = next()) != null){
+			chunk.add(next);
+		}
+		return chunk;
+	}
+
+	/**
+	 * Closes the connections to the nodes, whose logs were not read completely.
+	 */
+	public void close(){
+		NodeLog log;
+		while((log = heap.poll()) != null){
+			log.close();
+		}
+	}
+
+	/**
+	 * The log stream of a single node together with its next entry.
+	 */
+	private static class NodeLog {
+
+		private NodeInfo node;
+		private int position;
+		private Socket socket;
+		private ObjectInputStream in;
+		private volatile ComputationRequestInfo next;
+		private boolean closed;
+
+		public NodeLog(NodeInfo node, int position) {
+			this.node = node;
+			this.position = position;
+		}
+
+		public void open(String request, int timeout){
+			try {
+				synchronized(this){
+					if(closed){
+						return;
+					}
+					socket = new Socket();
+				}
+				socket.connect(new InetSocketAddress(node.getAddress(),node.getTcpPort()), timeout);
+				socket.setSoTimeout(timeout);
+				PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+				out.println(request);
+				in = new ObjectInputStream(socket.getInputStream());
+				advance();
+			}
+			catch (IOException e) {
+				close();
+			}
+		}
+
+		/**
+		 * Reads the next entry, or sets it to null and closes the connection at the end of the log.
+		 */
+		public void advance(){
+			try {
+				next = (ComputationRequestInfo) in.readObject();
+			}
+			catch (IOException e) {
+				close();
+			}
+			catch (ClassNotFoundException e) {
+				close();
+			}
+		}
+
+		public synchronized void close(){
+			closed = true;
+			next = null;
+			try {
+				if(socket != null) socket.close();
+			}
+			catch (IOException e) {}
+		}
+	}
+}
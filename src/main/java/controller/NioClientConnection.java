@@ -0,0 +1,333 @@
+package controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import channel.Channel;
+import channel.FramedChannel;
+
+/**
+ * A non-blocking client connection of the {@link NioClientListener}. The I/O thread splits the received bytes into messages and
+ * queues them, a worker thread then feeds them one by one into the {@link ClientSession}. Since the session only reads a message
+ * after it has arrived, {@link #read() read} never blocks. Written messages are queued and sent by the I/O thread.
+ * Messages are lines, unless the first received byte is the preamble of a {@link FramedChannel}, then they are length prefixed frames.
+ * <p>
+ * While more than MAX_INBOUND_MESSAGES messages wait for the session, the socket is not read, so a client which sends faster
+ * than it is served is slowed down by TCP. A client which does not read its responses is disconnected as soon as more than
+ * MAX_OUTBOUND_BYTES are pending. A client which does not finish a started handshake within the handshake timeout, or is idle
+ * for longer than the idle timeout, is disconnected as well.
+ */
+public class NioClientConnection implements Channel {
+
+	private static final int MAX_MESSAGE_LENGTH = 65536;
+	private static final int MAX_INBOUND_MESSAGES = 16;
+	private static final long MAX_OUTBOUND_BYTES = 1 << 20;
+	private SocketChannel socketChannel;
+	private SelectionKey selectionKey;
+	private NioClientListener.IOLoop ioLoop;
+	private NioClientListener listener;
+	private ExecutorService workers;
+	private ExecutorService handshakeWorkers;
+	private ClientSession session;
+	private ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+	private ByteArrayOutputStream partialMessage = new ByteArrayOutputStream();
+	private boolean modeKnown = false;
+	private volatile boolean framed = false;
+	private int frameLength = -1;
+	private ConcurrentLinkedQueue<byte[]> inbound = new ConcurrentLinkedQueue<byte[]>();
+	private AtomicInteger inboundCount = new AtomicInteger();
+	private ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<ByteBuffer>();
+	private AtomicLong outboundBytes = new AtomicLong();
+	private long handshakeTimeout;
+	private long idleTimeout;
+	private volatile long lastActivity = System.currentTimeMillis();
+	private long handshakeStarted = 0;
+	private AtomicBoolean scheduled = new AtomicBoolean(false);
+	private AtomicBoolean sessionClosed = new AtomicBoolean(false);
+	private volatile boolean closed = false;
+
+	public NioClientConnection(SocketChannel socketChannel, NioClientListener.IOLoop ioLoop, NioClientListener listener, ExecutorService workers, ExecutorService handshakeWorkers, long handshakeTimeout, long idleTimeout){
+		this.socketChannel = socketChannel;
+		this.ioLoop = ioLoop;
+		this.listener = listener;
+		this.workers = workers;
+		this.handshakeWorkers = handshakeWorkers;
+		this.handshakeTimeout = handshakeTimeout;
+		this.idleTimeout = idleTimeout;
+	}
+
+	public void setSession(ClientSession session){
+		this.session = session;
+	}
+
+	public SocketChannel getSocketChannel(){
+		return socketChannel;
+	}
+
+	public void setSelectionKey(SelectionKey selectionKey){
+		this.selectionKey = selectionKey;
+	}
+
+	/**
+	 * Called by the I/O thread if the socket is readable. Splits the received bytes into messages and schedules the session.
+	 */
+	public void onReadable(){
+		try {
+			int read = socketChannel.read(readBuffer);
+			if(read == -1){
+				close();
+				return;
+			}
+			lastActivity = System.currentTimeMillis();
+			readBuffer.flip();
+			if(!modeKnown && readBuffer.hasRemaining()){
+				modeKnown = true;
+				if(readBuffer.get(0) == FramedChannel.PREAMBLE){
+					framed = true;
+					readBuffer.get();
+				}
+			}
+			boolean valid = framed ? splitFrames() : splitLines();
+			readBuffer.clear();
+			if(!valid || partialMessage.size() > MAX_MESSAGE_LENGTH){
+				close();
+				return;
+			}
+			updateInterest();
+			schedule();
+		}
+		catch (IOException e) {
+			close();
+		}
+	}
+
+	private void enqueue(byte[] message){
+		inbound.add(message);
+		inboundCount.incrementAndGet();
+	}
+
+	private boolean splitLines(){
+		while(readBuffer.hasRemaining()){
+			byte b = readBuffer.get();
+			if(b == '\n'){
+				enqueue(partialMessage.toByteArray());
+				partialMessage.reset();
+			}
+			else if(b != '\r'){
+				partialMessage.write(b);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Collects the 4 byte length of a frame and then its content.
+	 * @return false if a frame is longer than allowed
+	 */
+	private boolean splitFrames(){
+		while(readBuffer.hasRemaining()){
+			partialMessage.write(readBuffer.get());
+			if(frameLength<0 && partialMessage.size() == 4){
+				byte[] length = partialMessage.toByteArray();
+				frameLength = ((length[0] & 0xff) << 24) | ((length[1] & 0xff) << 16) | ((length[2] & 0xff) << 8) | (length[3] & 0xff);
+				if(frameLength<0 || frameLength > MAX_MESSAGE_LENGTH){
+					return false;
+				}
+				partialMessage.reset();
+			}
+			if(frameLength >= 0 && partialMessage.size() == frameLength){
+				enqueue(partialMessage.toByteArray());
+				partialMessage.reset();
+				frameLength = -1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Called by the I/O thread if the socket is writable. Sends as many queued messages as possible.
+	 */
+	public void onWritable(){
+		try {
+			ByteBuffer buffer;
+			while((buffer = outbound.peek()) != null){
+				outboundBytes.addAndGet(-socketChannel.write(buffer));
+				if(buffer.hasRemaining()){
+					return;
+				}
+				outbound.poll();
+			}
+			updateInterest();
+		}
+		catch (IOException e) {
+			close();
+		}
+		catch (CancelledKeyException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Makes sure that a worker feeds the received messages into the session. At most one worker serves a connection at a time.
+	 * Until the client is authenticated, the session is served by the handshake workers, which wait for the {@link HandshakePool},
+	 * so the workers of authenticated sessions are never blocked by handshakes.
+	 */
+	private void schedule(){
+		if(scheduled.compareAndSet(false, true)){
+			try {
+				(session.isAwaitingAuthentication() ? handshakeWorkers : workers).execute(new Runnable() {
+					@Override
+					public void run() {
+						drain();
+					}
+				});
+			}
+			catch(RejectedExecutionException e){
+				scheduled.set(false);
+			}
+		}
+	}
+
+	private void drain(){
+		try {
+			while(!closed && !inbound.isEmpty()){
+				if(!session.step()){
+					close();
+				}
+			}
+		}
+		catch (IOException e) {
+			close();
+		}
+		finally {
+			if(closed && sessionClosed.compareAndSet(false, true)){
+				session.close();
+			}
+			scheduled.set(false);
+			if((!closed && !inbound.isEmpty()) || (closed && !sessionClosed.get())){
+				schedule();
+			}
+		}
+	}
+
+	/**
+	 * Queues a message. If the client already has more than MAX_OUTBOUND_BYTES pending, it does not read its responses and is disconnected.
+	 */
+	@Override
+	public void write(byte[] message) {
+		if(closed){
+			return;
+		}
+		ByteBuffer buffer;
+		if(framed){
+			buffer = ByteBuffer.allocate(4 + message.length);
+			buffer.putInt(message.length);
+			buffer.put(message);
+		}
+		else{
+			buffer = ByteBuffer.allocate(message.length + 1);
+			buffer.put(message);
+			buffer.put((byte) '\n');
+		}
+		buffer.flip();
+		if(outboundBytes.addAndGet(buffer.remaining()) > MAX_OUTBOUND_BYTES){
+			close();
+			return;
+		}
+		outbound.add(buffer);
+		ioLoop.requestUpdate(this);
+	}
+
+	/**
+	 * @return the next received message
+	 * @throws SocketException if no message was received
+	 */
+	@Override
+	public byte[] read() throws IOException {
+		byte[] message = inbound.poll();
+		if(message == null){
+			throw new SocketException();
+		}
+		if(inboundCount.decrementAndGet() == MAX_INBOUND_MESSAGES - 1){
+			ioLoop.requestUpdate(this);
+		}
+		return message;
+	}
+
+	/**
+	 * @return true if the client sent the preamble of a {@link FramedChannel}
+	 */
+	@Override
+	public boolean isBinary() {
+		return framed;
+	}
+
+	/**
+	 * Closes the socket, the user of the session is set offline by a worker afterwards.
+	 */
+	@Override
+	public void close() {
+		if(closed){
+			return;
+		}
+		closed = true;
+		if(selectionKey != null) selectionKey.cancel();
+		try {
+			socketChannel.close();
+		}
+		catch (IOException e) {}
+		listener.remove(this);
+		schedule();
+	}
+
+	/**
+	 * Called by the I/O thread to read only while few messages are queued, and to write while messages are pending.
+	 */
+	void updateInterest(){
+		try {
+			if(selectionKey != null && selectionKey.isValid()){
+				int interestOps = 0;
+				if(inboundCount.get() < MAX_INBOUND_MESSAGES){
+					interestOps |= SelectionKey.OP_READ;
+				}
+				if(!outbound.isEmpty()){
+					interestOps |= SelectionKey.OP_WRITE;
+				}
+				selectionKey.interestOps(interestOps);
+			}
+		}
+		catch (CancelledKeyException e) {}
+	}
+
+	/**
+	 * Called periodically by the I/O thread. Closes the connection if the client does not finish a started handshake within the handshake timeout,
+	 * or if it did not send anything for longer than the idle timeout while no request is processed.
+	 */
+	void checkTimeout(long now){
+		if(session.isHandshaking()){
+			if(handshakeStarted == 0){
+				handshakeStarted = now;
+			}
+			if(now - handshakeStarted > handshakeTimeout){
+				close();
+			}
+		}
+		else{
+			handshakeStarted = 0;
+			if(!scheduled.get() && now - lastActivity > idleTimeout){
+				close();
+			}
+		}
+	}
+}
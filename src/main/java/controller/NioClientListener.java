@@ -0,0 +1,194 @@
+package controller;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import util.ExecutorFactory;
+
+/**
+ * Non-blocking alternative to the {@link ClientListener}, which is used if client.listener is set to nio.
+ * Instead of one thread per client, a fixed number of I/O threads multiplex all client sockets with a {@link Selector} each.
+ * Complete messages are handed to client.nio.workerThreads worker threads (see {@link ExecutorFactory}), which drive the {@link ClientSession} of the connection.
+ * Until a client is authenticated, its messages are handled by a separate pool of as many threads as handshakes are admitted by the {@link HandshakePool},
+ * so further handshakes wait in the queue of that pool instead of parking a thread each.
+ * Every I/O thread closes its connections which exceed client.nio.handshakeTimeout or client.nio.idleTimeout.
+ */
+public class NioClientListener implements IClientListener {
+
+	private volatile boolean running = true;
+	private ServerSocketChannel serverSocketChannel;
+	private int tcpPort;
+	private CloudController cloudController;
+	private String key;
+	private TermPlanner termPlanner;
+	private TermEvaluator termEvaluator;
+	private String keysDir;
+	private SessionTickets sessionTickets;
+	private IOLoop[] ioLoops;
+	private Set<NioClientConnection> connections;
+	private ExecutorService ioExecutor;
+	private ExecutorService workers;
+	private ExecutorService handshakeWorkers;
+	private HandshakePool handshakePool;
+	private long handshakeTimeout;
+	private long idleTimeout;
+
+	public NioClientListener(int tcpPort, CloudController cloudController, String key, TermPlanner termPlanner, TermEvaluator termEvaluator, String keysDir, SessionTickets sessionTickets, HandshakePool handshakePool, ExecutorFactory executorFactory, int ioThreads, int workerThreads, long handshakeTimeout, long idleTimeout){
+		this.tcpPort = tcpPort;
+		this.cloudController = cloudController;
+		this.key = key;
+		this.termPlanner = termPlanner;
+		this.termEvaluator = termEvaluator;
+		this.keysDir = keysDir;
+		this.sessionTickets = sessionTickets;
+		this.handshakePool = handshakePool;
+		this.handshakeTimeout = handshakeTimeout;
+		this.idleTimeout = idleTimeout;
+		this.ioLoops = new IOLoop[ioThreads];
+		this.connections = ConcurrentHashMap.newKeySet();
+		this.ioExecutor = executorFactory.newServiceExecutor();
+		this.workers = executorFactory.newExecutor(workerThreads);
+		this.handshakeWorkers = executorFactory.newExecutor(handshakePool.getCapacity());
+	}
+
+	@Override
+	public void stopRunning() throws IOException{
+		running = false;
+		if(serverSocketChannel != null) serverSocketChannel.close();
+		for(NioClientConnection connection : connections){
+			connection.close();
+		}
+		for(IOLoop ioLoop : ioLoops){
+			if(ioLoop != null) ioLoop.close();
+		}
+		ioExecutor.shutdown();
+		workers.shutdown();
+		handshakeWorkers.shutdown();
+	}
+
+	/**
+	 * Removes a closed connection.
+	 * @param connection
+	 */
+	public void remove(NioClientConnection connection){
+		connections.remove(connection);
+	}
+
+	/**
+	 * Accepts the connections of the clients and distributes them round robin over the I/O threads.
+	 */
+	@Override
+	public void run() {
+		try {
+			for(int i = 0; i<ioLoops.length; i++){
+				ioLoops[i] = new IOLoop();
+				ioExecutor.submit(ioLoops[i]);
+			}
+			serverSocketChannel = ServerSocketChannel.open();
+			serverSocketChannel.socket().bind(new InetSocketAddress(tcpPort));
+			int next = 0;
+			while(running){
+				SocketChannel socketChannel = serverSocketChannel.accept();
+				socketChannel.configureBlocking(false);
+				IOLoop ioLoop = ioLoops[next];
+				next = (next + 1) % ioLoops.length;
+				NioClientConnection connection = new NioClientConnection(socketChannel, ioLoop, this, workers, handshakeWorkers, handshakeTimeout, idleTimeout);
+				connection.setSession(new ClientSession(connection, cloudController, key, termPlanner, termEvaluator, keysDir, sessionTickets, handshakePool));
+				connections.add(connection);
+				ioLoop.register(connection);
+			}
+		}
+		catch (IOException e) {}
+	}
+
+	/**
+	 * An I/O thread, which waits for readable and writable sockets of its connections.
+	 * Registrations and interest updates of other threads are queued and applied by the I/O thread itself.
+	 * About once per second, the timeouts of its connections are checked.
+	 */
+	public class IOLoop implements Runnable {
+
+		private Selector selector;
+		private ConcurrentLinkedQueue<NioClientConnection> registrations = new ConcurrentLinkedQueue<NioClientConnection>();
+		private ConcurrentLinkedQueue<NioClientConnection> updateRequests = new ConcurrentLinkedQueue<NioClientConnection>();
+		private long lastCheck = System.currentTimeMillis();
+
+		public IOLoop() throws IOException {
+			this.selector = Selector.open();
+		}
+
+		public void register(NioClientConnection connection){
+			registrations.add(connection);
+			selector.wakeup();
+		}
+
+		public void requestUpdate(NioClientConnection connection){
+			updateRequests.add(connection);
+			selector.wakeup();
+		}
+
+		public void close() throws IOException{
+			selector.close();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while(running){
+					selector.select(1000);
+					NioClientConnection connection;
+					while((connection = registrations.poll()) != null){
+						try {
+							SelectionKey selectionKey = connection.getSocketChannel().register(selector, SelectionKey.OP_READ, connection);
+							connection.setSelectionKey(selectionKey);
+						}
+						catch(IOException e){
+							connection.close();
+						}
+					}
+					while((connection = updateRequests.poll()) != null){
+						connection.updateInterest();
+					}
+					Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+					while(iterator.hasNext()){
+						SelectionKey selectionKey = iterator.next();
+						iterator.remove();
+						connection = (NioClientConnection) selectionKey.attachment();
+						if(selectionKey.isValid() && selectionKey.isWritable()){
+							connection.onWritable();
+						}
+						if(selectionKey.isValid() && selectionKey.isReadable()){
+							connection.onReadable();
+						}
+					}
+					checkTimeouts();
+				}
+			}
+			catch (ClosedSelectorException e) {}
+			catch (IOException e) {}
+		}
+
+		private void checkTimeouts(){
+			long now = System.currentTimeMillis();
+			if(now - lastCheck < 1000){
+				return;
+			}
+			lastCheck = now;
+			for(SelectionKey selectionKey : selector.keys()){
+				if(selectionKey.isValid()){
+					((NioClientConnection) selectionKey.attachment()).checkTimeout(now);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package controller;
+
+import java.io.IOException;
+
+/**
+ * Thrown if all connections, which the cloud controller may open to a node, are in use for longer than the timeout.
+ * Unlike other IOExceptions, it does not mean that the node is offline.
+ */
+public class NodeBusyException extends IOException {
+
+	private static final long serialVersionUID = -6112738495512937641L;
+
+	public NodeBusyException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,136 @@
+package controller;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.Key;
+
+import channel.BufferChannel;
+import channel.BufferPool;
+import channel.Buffers;
+import channel.Channel;
+import channel.FramedBufferChannel;
+import channel.HmacBufferChannel;
+import channel.HmacChannel;
+import channel.TcpChannel;
+import model.NodeInfo;
+
+/**
+ * A long-lived, HMAC protected connection from the cloud controller to a node.
+ * The node keeps serving requests on this connection until it is closed, see {@link NodeConnectionPool}.
+ * With framing, requests are written into a pooled direct buffer, which is reused for every request of the connection.
+ * Connecting and every response may take at most the given timeout.
+ */
+public class NodeConnection {
+
+	private NodeInfo node;
+	private Socket socket;
+	private Channel channel;
+	private BufferChannel bufferChannel;
+	private BufferPool bufferPool;
+	private ByteBuffer[] request;
+	private volatile long lastUsed;
+
+	/**
+	 * @param node
+	 * @param hmacKey
+	 * @param framing true if the requests are sent as frames
+	 * @param bufferPool the pool of the request buffers of framed connections
+	 * @param timeout the time in milliseconds the node may take to accept the connection and to answer a request
+	 * @throws IOException
+	 */
+	public NodeConnection(NodeInfo node, Key hmacKey, boolean framing, BufferPool bufferPool, int timeout) throws IOException {
+		this.node = node;
+		InetSocketAddress address = new InetSocketAddress(node.getAddress(), node.getTcpPort());
+		if(framing){
+			SocketChannel socketChannel = SocketChannel.open();
+			this.socket = socketChannel.socket();
+			try {
+				socket.connect(address, timeout);
+				FramedBufferChannel framedChannel = FramedBufferChannel.connect(socketChannel, bufferPool);
+				framedChannel.setTimeout(timeout);
+				this.bufferChannel = new HmacBufferChannel(framedChannel, hmacKey);
+			}
+			catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+			this.bufferPool = bufferPool;
+			this.request = new ByteBuffer[]{bufferPool.acquire()};
+		}
+		else{
+			this.socket = new Socket();
+			try {
+				socket.connect(address, timeout);
+				socket.setSoTimeout(timeout);
+			}
+			catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+			this.channel = new HmacChannel(new TcpChannel(socket), hmacKey);
+		}
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Sends a request to the node and waits for its response.
+	 * @param message the request
+	 * @return the response of the node
+	 * @throws IOException
+	 */
+	public String send(String message) throws IOException {
+		String response;
+		if(bufferChannel != null){
+			ByteBuffer buffer = Buffers.encode(message, request[0]);
+			if(buffer != request[0]){
+				bufferChannel.write(new ByteBuffer[]{buffer}, 0, 1);
+			}
+			else{
+				bufferChannel.write(request, 0, 1);
+			}
+			response = Buffers.decode(bufferChannel.read());
+		}
+		else{
+			channel.write(message.getBytes());
+			response = new String(channel.read());
+		}
+		lastUsed = System.currentTimeMillis();
+		return response;
+	}
+
+	public NodeInfo getNode() {
+		return node;
+	}
+
+	public long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * Closes the connection, the node then stops serving it.
+	 */
+	public void close() {
+		try {
+			socket.close();
+			if(channel != null) channel.close();
+			if(bufferChannel != null) bufferChannel.close();
+		}
+		catch (IOException e) {}
+		finally {
+			if(bufferChannel != null) releaseBuffer();
+		}
+	}
+
+	/**
+	 * Returns the request buffer to the pool, at most once even if the connection is closed several times.
+	 */
+	private synchronized void releaseBuffer(){
+		if(request[0] != null){
+			bufferPool.release(request[0]);
+			request[0] = null;
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.security.Key;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import channel.BufferPool;
+import channel.IntegrityException;
+import model.NodeInfo;
+import util.Keys;
+
+/**
+ * Keeps idle {@link NodeConnection}s to every node, so that a !compute request does not have to open a new socket
+ * and read the hmac key for every single operation.
+ * At most poolSize idle connections are kept per node, connections that were not used for idleTimeout milliseconds are closed.
+ * If framing is enabled, new connections send frames from the direct buffers of a shared {@link BufferPool} instead of lines.
+ * <p>
+ * At most maxConnections requests are sent to a node at the same time, since a node does not accept more than listener.max.connections connections.
+ * A request waits at most timeout milliseconds for a free connection, and the node has to answer it within the same time.
+ */
+public class NodeConnectionPool {
+
+	private static final int BUFFER_SIZE = 4096;
+	private static final int MAX_POOLED_NODES = 16;
+
+	private Key hmacKey;
+	private int poolSize;
+	private long idleTimeout;
+	private int maxConnections;
+	private int timeout;
+	private boolean framing;
+	private BufferPool bufferPool;
+	private ConcurrentHashMap<NodeInfo, ConcurrentLinkedDeque<NodeConnection>> idleConnections;
+	private ConcurrentHashMap<NodeInfo, AtomicInteger> idleCounts;
+	private ConcurrentHashMap<NodeInfo, Semaphore> permits;
+
+	/**
+	 * @param hmacKey the file of the hmac key
+	 * @param poolSize the maximum number of idle connections per node
+	 * @param idleTimeout the time in milliseconds after which an idle connection is closed
+	 * @param framing true if new connections send frames
+	 * @param maxConnections the maximum number of concurrent requests per node
+	 * @param timeout the time in milliseconds a request waits for a free connection, and for the response of the node
+	 * @throws IOException if the hmac key can't be read
+	 */
+	public NodeConnectionPool(String hmacKey, int poolSize, long idleTimeout, boolean framing, int maxConnections, int timeout) throws IOException {
+		this.hmacKey = Keys.getSecretKey(new File(hmacKey));
+		this.poolSize = poolSize;
+		this.idleTimeout = idleTimeout;
+		this.maxConnections = maxConnections;
+		this.timeout = timeout;
+		this.framing = framing;
+		this.bufferPool = new BufferPool(BUFFER_SIZE, 2*poolSize*MAX_POOLED_NODES);
+		this.idleConnections = new ConcurrentHashMap<NodeInfo, ConcurrentLinkedDeque<NodeConnection>>();
+		this.idleCounts = new ConcurrentHashMap<NodeInfo, AtomicInteger>();
+		this.permits = new ConcurrentHashMap<NodeInfo, Semaphore>();
+	}
+
+	/**
+	 * Sends a request to the given node over a pooled connection.
+	 * If a reused connection turns out to be broken (e.g. the node was restarted), the request is repeated once over a new connection.
+	 * @param node the node
+	 * @param message the request
+	 * @return the response of the node
+	 * @throws IntegrityException if the response of the node was tampered
+	 * @throws NodeBusyException if no connection to the node became free within the timeout
+	 * @throws IOException if the node can't be reached or did not answer within the timeout
+	 */
+	public String send(NodeInfo node, String message) throws IOException {
+		Semaphore nodePermits = permits.get(node);
+		if(nodePermits == null){
+			permits.putIfAbsent(node, new Semaphore(maxConnections));
+			nodePermits = permits.get(node);
+		}
+		try {
+			if(!nodePermits.tryAcquire(timeout, TimeUnit.MILLISECONDS)){
+				throw new NodeBusyException("All connections to the node are in use.");
+			}
+		}
+		catch (InterruptedException e) {
+			throw new NodeBusyException("Interrupted while waiting for a connection to the node.");
+		}
+		try {
+			return sendTimed(node, message);
+		}
+		finally {
+			nodePermits.release();
+		}
+	}
+
+	private String sendTimed(NodeInfo node, String message) throws IOException {
+		node.requestStarted();
+		long start = System.nanoTime();
+		boolean successful = false;
+		try {
+			String response = sendOverPool(node, message);
+			successful = true;
+			return response;
+		}
+		finally {
+			node.requestFinished(successful ? System.nanoTime()-start : -1);
+		}
+	}
+
+	private String sendOverPool(NodeInfo node, String message) throws IOException {
+		NodeConnection connection = poll(node);
+		boolean reused = connection != null;
+		if(!reused){
+			connection = new NodeConnection(node, hmacKey, framing, bufferPool, timeout);
+		}
+		try {
+			String response = connection.send(message);
+			release(connection);
+			return response;
+		}
+		catch(IOException e){
+			connection.close();
+			//only a broken reused connection is retried, a tampered or late response is not
+			if(!reused || e instanceof IntegrityException || e instanceof SocketTimeoutException){
+				throw e;
+			}
+		}
+		connection = new NodeConnection(node, hmacKey, framing, bufferPool, timeout);
+		try {
+			String response = connection.send(message);
+			release(connection);
+			return response;
+		}
+		catch(IOException e){
+			connection.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return an idle connection to the node which did not time out yet, or null if there is no such connection
+	 */
+	private NodeConnection poll(NodeInfo node){
+		ConcurrentLinkedDeque<NodeConnection> connections = idleConnections.get(node);
+		if(connections == null){
+			return null;
+		}
+		NodeConnection connection;
+		while((connection = connections.pollFirst()) != null){
+			idleCounts.get(node).decrementAndGet();
+			if(System.currentTimeMillis() - connection.getLastUsed() <= idleTimeout){
+				return connection;
+			}
+			connection.close();
+		}
+		return null;
+	}
+
+	/**
+	 * Gives a connection back to the pool, or closes it if there are already poolSize idle connections to that node.
+	 */
+	private void release(NodeConnection connection){
+		NodeInfo node = connection.getNode();
+		ConcurrentLinkedDeque<NodeConnection> connections = idleConnections.get(node);
+		if(connections == null){
+			idleConnections.putIfAbsent(node, new ConcurrentLinkedDeque<NodeConnection>());
+			idleCounts.putIfAbsent(node, new AtomicInteger());
+			connections = idleConnections.get(node);
+		}
+		AtomicInteger count = idleCounts.get(node);
+		if(count.incrementAndGet() > poolSize){
+			count.decrementAndGet();
+			connection.close();
+			return;
+		}
+		connections.offerFirst(connection);
+	}
+
+	/**
+	 * Closes all idle connections which were not used for idleTimeout milliseconds.
+	 */
+	public void evictIdleConnections(){
+		long now = System.currentTimeMillis();
+		for(NodeInfo node : idleConnections.keySet()){
+			Iterator<NodeConnection> iterator = idleConnections.get(node).iterator();
+			while(iterator.hasNext()){
+				NodeConnection connection = iterator.next();
+				if(now - connection.getLastUsed() > idleTimeout && idleConnections.get(node).removeFirstOccurrence(connection)){
+					idleCounts.get(node).decrementAndGet();
+					connection.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes all idle connections to the given node, e.g. because it went offline.
+	 * @param node
+	 */
+	public void closeConnections(NodeInfo node){
+		ConcurrentLinkedDeque<NodeConnection> connections = idleConnections.get(node);
+		if(connections == null){
+			return;
+		}
+		NodeConnection connection;
+		while((connection = connections.pollFirst()) != null){
+			idleCounts.get(node).decrementAndGet();
+			connection.close();
+		}
+	}
+
+	/**
+	 * Closes all idle connections.
+	 */
+	public void close(){
+		for(NodeInfo node : idleConnections.keySet()){
+			closeConnections(node);
+		}
+	}
+}
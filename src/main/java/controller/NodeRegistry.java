@@ -0,0 +1,202 @@
+package controller;
+
+import java.net.InetAddress;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import model.NodeInfo;
+import model.NodeObserver;
+
+/**
+ * Keeps track of all nodes which ever registered to the cloud controller.
+ * For every operator, the online nodes supporting it are indexed by usage in a {@link ConcurrentSkipListSet},
+ * so the node with the lowest usage is found without scanning all nodes and without locking.
+ * The index is updated whenever the usage or the status of a node changes, see {@link #nodeChanged(NodeInfo) nodeChanged}.
+ */
+public class NodeRegistry implements NodeObserver {
+
+	private static final String OPERATORS = "+-*/";
+
+	private CopyOnWriteArrayList<NodeInfo> nodes;
+	private ConcurrentHashMap<String, NodeInfo> nodesByAddress;
+	private ConcurrentHashMap<NodeInfo, AtomicReference<Entry>> entries;
+	private Map<Character, ConcurrentSkipListSet<Entry>> nodesByOperator;
+	private Map<Character, CopyOnWriteArrayList<NodeInfo>> candidates;
+	private AtomicInteger sequence;
+	private AtomicLong version;
+
+	public NodeRegistry() {
+		this.nodes = new CopyOnWriteArrayList<NodeInfo>();
+		this.nodesByAddress = new ConcurrentHashMap<String, NodeInfo>();
+		this.entries = new ConcurrentHashMap<NodeInfo, AtomicReference<Entry>>();
+		this.nodesByOperator = new HashMap<Character, ConcurrentSkipListSet<Entry>>();
+		this.candidates = new HashMap<Character, CopyOnWriteArrayList<NodeInfo>>();
+		for(char operator : OPERATORS.toCharArray()){
+			candidates.put(operator, new CopyOnWriteArrayList<NodeInfo>());
+			nodesByOperator.put(operator, new ConcurrentSkipListSet<Entry>(new Comparator<Entry>() {
+				@Override
+				public int compare(Entry e1, Entry e2) {
+					if(e1.usage != e2.usage){
+						return e1.usage < e2.usage ? -1 : 1;
+					}
+					if(e1.sequence != e2.sequence){
+						return Integer.compare(e1.sequence, e2.sequence);
+					}
+					return Long.compare(e1.version, e2.version);
+				}
+			}));
+		}
+		this.sequence = new AtomicInteger();
+		this.version = new AtomicLong();
+	}
+
+	/**
+	 * @return all nodes in the order of their registration
+	 */
+	public List<NodeInfo> getNodes(){
+		return nodes;
+	}
+
+	/**
+	 * @param operator
+	 * 			the given operator
+	 * @return all nodes supporting the operator, no matter whether they are online or not
+	 */
+	public List<NodeInfo> getNodes(String operator){
+		if(operator.length() != 1 || !candidates.containsKey(operator.charAt(0))){
+			return new CopyOnWriteArrayList<NodeInfo>();
+		}
+		return candidates.get(operator.charAt(0));
+	}
+
+	/**
+	 * Updates the latest time a node sent an isAlive message or registers a new node.
+	 * @param address
+	 * 			the host address of the node.
+	 * @param tcpPort
+	 * 			the tcp port the node is listening for requests.
+	 * @param operators
+	 * 			the supported operators by this node.
+	 * @param time
+	 * 			the last time the node sent a message.
+	 */
+	public void update(InetAddress address, int tcpPort, String operators, long time){
+		String key = address.getHostAddress()+":"+tcpPort;
+		NodeInfo node = nodesByAddress.get(key);
+		if(node == null){
+			NodeInfo newNode = new NodeInfo(address, tcpPort, operators, 0, true, time);
+			node = nodesByAddress.putIfAbsent(key, newNode);
+			if(node == null){
+				Entry entry = new Entry(newNode, 0, true, sequence.getAndIncrement(), version.getAndIncrement());
+				entries.put(newNode, new AtomicReference<Entry>(entry));
+				addToIndex(entry);
+				nodes.add(newNode);
+				for(char operator : operators.toCharArray()){
+					if(candidates.containsKey(operator)){
+						candidates.get(operator).add(newNode);
+					}
+				}
+				newNode.setObserver(this);
+				return;
+			}
+		}
+		node.setLastSeen(time);
+		node.setStatus(true);
+	}
+
+	/**
+	 * Finds the online node with the lowest usage for a given operator.
+	 * @param operator 
+	 * 			the given operator
+	 * @return the node with the lowest usage or null if no such node exists
+	 */
+	public NodeInfo getNodeWithLowestUsage(String operator){
+		if(operator.length() != 1 || !nodesByOperator.containsKey(operator.charAt(0))){
+			return null;
+		}
+		for(Entry entry : nodesByOperator.get(operator.charAt(0))){
+			//skip entries which have already been replaced by a concurrent update
+			if(entries.get(entry.node).get() == entry){
+				return entry.node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Re-indexes the node with its current usage and status. The latest entry of a node is swapped in first, so an entry,
+	 * which is added after it has already been replaced by a concurrent update, is removed again by the thread which added it.
+	 * The snapshot is read again after the swap: if a concurrent update swapped in its entry before this one, this entry
+	 * may be older than the node, so the node is re-indexed until the installed entry matches it.
+	 */
+	@Override
+	public void nodeChanged(NodeInfo node){
+		AtomicReference<Entry> current = entries.get(node);
+		if(current == null){
+			return;
+		}
+		NodeInfo.Snapshot snapshot = node.snapshot();
+		while(true){
+			Entry entry = new Entry(node, snapshot.getUsage(), snapshot.isOnline(), current.get().sequence, version.getAndIncrement());
+			Entry previous = current.getAndSet(entry);
+			removeFromIndex(previous);
+			if(entry.online){
+				addToIndex(entry);
+				if(current.get() != entry){
+					removeFromIndex(entry);
+				}
+			}
+			snapshot = node.snapshot();
+			if(current.get() != entry || (snapshot.getUsage() == entry.usage && snapshot.isOnline() == entry.online)){
+				//either a later update has taken over or the entry is up to date
+				return;
+			}
+		}
+	}
+
+	private void addToIndex(Entry entry){
+		for(char operator : entry.node.getOperators().toCharArray()){
+			if(nodesByOperator.containsKey(operator)){
+				nodesByOperator.get(operator).add(entry);
+			}
+		}
+	}
+
+	private void removeFromIndex(Entry entry){
+		for(char operator : entry.node.getOperators().toCharArray()){
+			if(nodesByOperator.containsKey(operator)){
+				nodesByOperator.get(operator).remove(entry);
+			}
+		}
+	}
+
+	/**
+	 * An immutable snapshot of the usage and status of a node, as it is stored in the index.
+	 * The sequence number is the position of the registration, it keeps the order of nodes with equal usage stable.
+	 * The version distinguishes the entries of the same node.
+	 */
+	private static class Entry {
+
+		private NodeInfo node;
+		private long usage;
+		private boolean online;
+		private int sequence;
+		private long version;
+
+		public Entry(NodeInfo node, long usage, boolean online, int sequence, long version) {
+			this.node = node;
+			this.usage = usage;
+			this.online = online;
+			this.sequence = sequence;
+			this.version = version;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package controller;
+
+import model.NodeInfo;
+
+/**
+ * Decides which node computes an operation. The strategy is selected with the node.selection property of the cloud controller.
+ */
+public interface NodeSelectionStrategy {
+
+	/**
+	 * @param operator
+	 *            the operator of the operation
+	 * @param operand
+	 *            the right operand of the operation, which is already known when the operation is part of a chain
+	 * @return the node which should compute the operation or null if no online node supports the operator
+	 */
+	NodeInfo select(String operator, String operand);
+}
@@ -0,0 +1,85 @@
+package controller;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import model.NodeInfo;
+
+/**
+ * Picks two random online nodes and selects the one with fewer outstanding requests, or the lower usage if both are equally busy.
+ * Unlike always taking the least used node, concurrent requests are spread over the nodes instead of herding onto a single one.
+ * The two nodes are drawn by index from the nodes of the operator in the {@link NodeRegistry}, so a selection takes constant time.
+ * Only if a few draws hit offline nodes, the online nodes are searched for.
+ */
+public class PowerOfTwoChoicesStrategy implements NodeSelectionStrategy {
+
+	private static final int ATTEMPTS = 3;
+	private NodeRegistry nodeRegistry;
+
+	public PowerOfTwoChoicesStrategy(NodeRegistry nodeRegistry) {
+		this.nodeRegistry = nodeRegistry;
+	}
+
+	@Override
+	public NodeInfo select(String operator, String operand) {
+		List<NodeInfo> nodes = nodeRegistry.getNodes(operator);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		//nodes are never removed from the registry, so the indexes below the size stay valid
+		int size = nodes.size();
+		if(size>1){
+			for(int attempt = 0; attempt<ATTEMPTS; attempt++){
+				int i = random.nextInt(size);
+				int j = random.nextInt(size-1);
+				if(j>=i){
+					j++;
+				}
+				NodeInfo first = nodes.get(i);
+				NodeInfo second = nodes.get(j);
+				if(first.isOnline() && second.isOnline()){
+					return lessBusy(first, second);
+				}
+			}
+		}
+		return selectByScan(nodes, random);
+	}
+
+	/**
+	 * Reservoir sampling of two distinct online nodes.
+	 */
+	private NodeInfo selectByScan(List<NodeInfo> nodes, ThreadLocalRandom random){
+		NodeInfo first = null;
+		NodeInfo second = null;
+		int online = 0;
+		for(NodeInfo node : nodes){
+			if(!node.isOnline()){
+				continue;
+			}
+			online++;
+			if(online == 1){
+				first = node;
+			}
+			else if(online == 2){
+				second = node;
+			}
+			else if(random.nextInt(online)<2){
+				if(random.nextBoolean()){
+					first = node;
+				}
+				else{
+					second = node;
+				}
+			}
+		}
+		if(second == null){
+			return first;
+		}
+		return lessBusy(first, second);
+	}
+
+	private NodeInfo lessBusy(NodeInfo first, NodeInfo second){
+		if(first.getOutstandingRequests() != second.getOutstandingRequests()){
+			return first.getOutstandingRequests()<second.getOutstandingRequests() ? first : second;
+		}
+		return first.getUsage()<=second.getUsage() ? first : second;
+	}
+}
@@ -0,0 +1,97 @@
+package controller;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.rmi.server.Unreferenced;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import model.ComputationRequestInfo;
+
+/**
+ * Exports a {@link LogMerge} to the admin console. The stream is unexported as soon as its end was reached, it was closed,
+ * or the admin console dropped its reference without closing it.
+ * <p>
+ * Since the distributed garbage collector notices a dropped reference only after minutes, the stream is also closed if the admin console
+ * did not ask for the next chunk within logs.idleTimeout milliseconds. This releases the connections to the nodes, whose workers are
+ * blocked in sending their logs as long as the connections are open.
+ */
+public class RemoteLogStream extends UnicastRemoteObject implements ILogStream, Unreferenced {
+
+	private static final long serialVersionUID = 2309470591634907312L;
+	private LogMerge logMerge;
+	private ScheduledExecutorService scheduler;
+	private long idleTimeout;
+	private ScheduledFuture<?> deadline;
+	private boolean closed;
+
+	/**
+	 * @param logMerge
+	 * @param scheduler the executor which closes the stream after the idle timeout
+	 * @param idleTimeout the time in milliseconds after which the stream is closed, if the next chunk is not requested
+	 * @throws RemoteException
+	 */
+	public RemoteLogStream(LogMerge logMerge, ScheduledExecutorService scheduler, long idleTimeout) throws RemoteException {
+		this.logMerge = logMerge;
+		this.scheduler = scheduler;
+		this.idleTimeout = idleTimeout;
+		resetDeadline();
+	}
+
+	@Override
+	public synchronized List<ComputationRequestInfo> next(int max) throws RemoteException {
+		List<ComputationRequestInfo> chunk = logMerge.next(max);
+		if(chunk.isEmpty()){
+			close();
+		}
+		else{
+			resetDeadline();
+		}
+		return chunk;
+	}
+
+	@Override
+	public synchronized void close() throws RemoteException {
+		closed = true;
+		if(deadline != null) deadline.cancel(false);
+		logMerge.close();
+		try {
+			UnicastRemoteObject.unexportObject(this, true);
+		}
+		catch (NoSuchObjectException e) {}
+	}
+
+	@Override
+	public void unreferenced() {
+		try {
+			close();
+		}
+		catch (RemoteException e) {}
+	}
+
+	/**
+	 * Schedules the closing of the stream after the idle timeout, instead of the previously scheduled one.
+	 */
+	private synchronized void resetDeadline(){
+		if(closed){
+			return;
+		}
+		if(deadline != null) deadline.cancel(false);
+		try {
+			deadline = scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					//an idle stream is closed like one whose reference was dropped
+					unreferenced();
+				}
+			}, idleTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e) {
+			//the cloud controller is shutting down
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package controller;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.util.encoders.Base64;
+
+import util.CryptoPool;
+
+/**
+ * Issues and opens the session tickets, which let a client resume its session without the RSA handshake (see {@link channel.SessionResumption}).
+ * A ticket contains the username, the resumption secret and the expiry time, encrypted with AES-GCM. The ticket key is derived from the private key
+ * of the cloud controller, so the cloud controller does not have to store the tickets, and tickets stay valid if it is restarted.
+ * <p>
+ * A ticket also contains the generation of its user, which is increased when the user logs out (see {@link #revoke(String) revoke}),
+ * so all tickets issued before are rejected. The generations are only kept in memory, a restart of the cloud controller forgets them.
+ */
+public class SessionTickets {
+
+	private static final int NONCE_LENGTH = 12;
+	private static final int TAG_LENGTH = 128;
+
+	private SecretKey ticketKey;
+	private long lifetime;
+	private ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * @param controllerKey the private key of the cloud controller
+	 * @param lifetime the time in milliseconds, for which a ticket can be used
+	 * @throws GeneralSecurityException
+	 */
+	public SessionTickets(PrivateKey controllerKey, long lifetime) throws GeneralSecurityException {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		digest.update("session ticket".getBytes());
+		digest.update(controllerKey.getEncoded());
+		this.ticketKey = new SecretKeySpec(digest.digest(), "AES");
+		this.lifetime = lifetime;
+	}
+
+	/**
+	 * @param username
+	 * @param secret the resumption secret, which is also sent to the client
+	 * @return the ticket in Base64
+	 * @throws GeneralSecurityException
+	 */
+	public String issue(String username, byte[] secret) throws GeneralSecurityException {
+		byte[] name = username.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer plaintext = ByteBuffer.allocate(8+8+2+name.length+secret.length);
+		plaintext.putLong(System.currentTimeMillis()+lifetime);
+		plaintext.putLong(generation(username).get());
+		plaintext.putShort((short) name.length);
+		plaintext.put(name);
+		plaintext.put(secret);
+		byte[] nonce = new byte[NONCE_LENGTH];
+		CryptoPool.getSecureRandom().nextBytes(nonce);
+		Cipher cipher = CryptoPool.getCipher("AES/GCM/NoPadding");
+		cipher.init(Cipher.ENCRYPT_MODE, ticketKey, new GCMParameterSpec(TAG_LENGTH, nonce));
+		byte[] ciphertext = cipher.doFinal(plaintext.array());
+		ByteBuffer ticket = ByteBuffer.allocate(nonce.length+ciphertext.length);
+		ticket.put(nonce);
+		ticket.put(ciphertext);
+		return new String(Base64.encode(ticket.array()));
+	}
+
+	/**
+	 * @param ticket the ticket in Base64
+	 * @return the content of the ticket, or null if the ticket was not issued by this cloud controller, has expired or was revoked
+	 */
+	public Ticket open(String ticket){
+		try {
+			byte[] bytes = Base64.decode(ticket);
+			if(bytes.length<=NONCE_LENGTH){
+				return null;
+			}
+			Cipher cipher = CryptoPool.getCipher("AES/GCM/NoPadding");
+			cipher.init(Cipher.DECRYPT_MODE, ticketKey, new GCMParameterSpec(TAG_LENGTH, bytes, 0, NONCE_LENGTH));
+			ByteBuffer plaintext = ByteBuffer.wrap(cipher.doFinal(bytes, NONCE_LENGTH, bytes.length-NONCE_LENGTH));
+			if(plaintext.getLong()<System.currentTimeMillis()){
+				return null;
+			}
+			long ticketGeneration = plaintext.getLong();
+			byte[] name = new byte[plaintext.getShort()];
+			plaintext.get(name);
+			String username = new String(name, StandardCharsets.UTF_8);
+			if(ticketGeneration != generation(username).get()){
+				return null;
+			}
+			byte[] secret = new byte[plaintext.remaining()];
+			plaintext.get(secret);
+			return new Ticket(username, secret);
+		}
+		catch (GeneralSecurityException e) {
+			return null;
+		}
+		catch (RuntimeException e) {
+			//malformed Base64 or a truncated ticket
+			return null;
+		}
+	}
+
+	/**
+	 * Invalidates all tickets, which were issued to the user so far.
+	 * @param username
+	 */
+	public void revoke(String username){
+		generation(username).incrementAndGet();
+	}
+
+	private AtomicLong generation(String username){
+		AtomicLong generation = generations.get(username);
+		if(generation == null){
+			generations.putIfAbsent(username, new AtomicLong());
+			generation = generations.get(username);
+		}
+		return generation;
+	}
+
+	/**
+	 * The content of a valid ticket.
+	 */
+	public static class Ticket {
+
+		private String username;
+		private byte[] secret;
+
+		public Ticket(String username, byte[] secret) {
+			this.username = username;
+			this.secret = secret;
+		}
+
+		public String getUsername() {
+			return username;
+		}
+
+		public byte[] getSecret() {
+			return secret;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import channel.IntegrityException;
+import model.NodeInfo;
+
+/**
+ * Computes the tree of a term (see {@link TermPlanner}) with the help of the nodes.
+ * The right sub-term of an operation is computed on the executor while the left sub-term is computed by the calling thread,
+ * so independent sub-terms are sent to the nodes concurrently and a term takes as many round trips as the depth of its tree.
+ * A purely sequential term never leaves the calling thread.
+ * An operation waits for both of its sub-terms even if one of them failed, so when a term is evaluated, no request for it is still pending
+ * and the number of operations to charge is final.
+ * If compute.batch is enabled, consecutive operations of a chain which are routed to the same node are sent as a single !computeBatch request.
+ */
+public class TermEvaluator {
+
+	private CloudController cloudController;
+	private NodeConnectionPool nodeConnectionPool;
+	private ExecutorService executor;
+	private boolean batch;
+
+	public TermEvaluator(CloudController cloudController, NodeConnectionPool nodeConnectionPool, ExecutorService executor, boolean batch) {
+		this.cloudController = cloudController;
+		this.nodeConnectionPool = nodeConnectionPool;
+		this.executor = executor;
+		this.batch = batch;
+	}
+
+	/**
+	 * Computes the given term.
+	 * @param term
+	 * @param nrOfOperations is set to the number of operations that have to be charged
+	 * @return the result of the term or the reason why it could not be computed
+	 */
+	public String evaluate(TermNode term, AtomicInteger nrOfOperations){
+		try {
+			return evaluateAsync(term, nrOfOperations).join();
+		}
+		catch(CompletionException e){
+			if(!(e.getCause() instanceof ComputeException)){
+				throw e;
+			}
+			ComputeException cause = (ComputeException) e.getCause();
+			if(!cause.isCharged()){
+				nrOfOperations.set(0);
+			}
+			return cause.getMessage();
+		}
+	}
+
+	private CompletableFuture<String> evaluateAsync(final TermNode term, final AtomicInteger nrOfOperations){
+		if(term.isOperand()){
+			return CompletableFuture.completedFuture(term.getOperand());
+		}
+		if(batch && term.getRight().isOperand() && !term.getLeft().isOperand() && term.getLeft().getRight().isOperand()){
+			return evaluateChainAsync(term, nrOfOperations);
+		}
+		final CompletableFuture<String> right;
+		if(term.getRight().isOperand()){
+			right = CompletableFuture.completedFuture(term.getRight().getOperand());
+		}
+		else{
+			right = CompletableFuture.supplyAsync(new Supplier<CompletableFuture<String>>() {
+				@Override
+				public CompletableFuture<String> get() {
+					return evaluateAsync(term.getRight(), nrOfOperations);
+				}
+			}, executor).thenCompose(Function.<CompletableFuture<String>>identity());
+		}
+		final CompletableFuture<String> left = evaluateAsync(term.getLeft(), nrOfOperations);
+		return CompletableFuture.allOf(left, right).thenApply(new Function<Void, String>() {
+			@Override
+			public String apply(Void done) {
+				try {
+					return compute(left.join(), term.getOperator(), right.join(), nrOfOperations);
+				}
+				catch(ComputeException e){
+					throw new CompletionException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Computes a chain of operations, whose right operands are numbers, after the term at the start of the chain has been computed.
+	 */
+	private CompletableFuture<String> evaluateChainAsync(TermNode term, final AtomicInteger nrOfOperations){
+		final List<TermNode> steps = new ArrayList<TermNode>();
+		TermNode start = term;
+		while(!start.isOperand() && start.getRight().isOperand()){
+			steps.add(0, start);
+			start = start.getLeft();
+		}
+		return evaluateAsync(start, nrOfOperations).thenApply(new Function<String, String>() {
+			@Override
+			public String apply(String startResult) {
+				try {
+					return computeChain(startResult, steps, nrOfOperations);
+				}
+				catch(ComputeException e){
+					throw new CompletionException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Splits the chain into runs of operations, which are routed to the same node by the {@link NodeSelectionStrategy}, and sends each run as a single !computeBatch request.
+	 * @return the result of the chain
+	 * @throws ComputeException if no node is available, the response was tampered or invalid, or a division by 0 occurred
+	 */
+	private String computeChain(String result, List<TermNode> steps, AtomicInteger nrOfOperations) throws ComputeException {
+		int i = 0;
+		while(i<steps.size()){
+			NodeInfo node = cloudController.selectNode(steps.get(i).getOperator(), steps.get(i).getRight().getOperand());
+			if(node == null){
+				throw new ComputeException("No nodes available for at least one operation.", false);
+			}
+			int end = i+1;
+			while(end<steps.size() && cloudController.selectNode(steps.get(end).getOperator(), steps.get(end).getRight().getOperand()) == node){
+				end++;
+			}
+			if(end-i == 1){
+				result = compute(result, steps.get(i).getOperator(), steps.get(i).getRight().getOperand(), nrOfOperations);
+				i++;
+				continue;
+			}
+			String message = "!computeBatch "+result;
+			for(int j = i; j<end; j++){
+				message = message+" "+steps.get(j).getOperator()+" "+steps.get(j).getRight().getOperand();
+			}
+			String response;
+			try{
+				response = nodeConnectionPool.send(node, message);
+			}
+			catch(IntegrityException e){
+				throw new ComputeException("Incorrect Hash", false);
+			}
+			catch(NodeBusyException e){
+				throw new ComputeException("The nodes are busy, please try again later.", false);
+			}
+			catch(IOException e){
+				node.setStatus(false);
+				nodeConnectionPool.closeConnections(node);
+				continue;
+			}
+			if(response.startsWith("!tampered")){
+				throw new ComputeException(response, false);
+			}
+			String[] stepResults = response.split(" ");
+			if(!isValidChainResponse(stepResults, end-i)){
+				throw new ComputeException("Invalid response of a node.", false);
+			}
+			for(String stepResult : stepResults){
+				nrOfOperations.incrementAndGet();
+				if(stepResult.startsWith("Error")){
+					throw new ComputeException("Error: division by 0", true);
+				}
+				increaseUsage(node, stepResult);
+				result = stepResult;
+			}
+			i = end;
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the node sent a number for each of the steps, or stopped with a division by 0 before the last step
+	 */
+	private boolean isValidChainResponse(String[] stepResults, int steps){
+		for(int k = 0; k<stepResults.length; k++){
+			if(stepResults[k].startsWith("Error")){
+				return k<steps && String.join(" ", Arrays.copyOfRange(stepResults, k, stepResults.length)).equals("Error: division by 0");
+			}
+			if(!stepResults[k].matches("-?\\d+")){
+				return false;
+			}
+		}
+		return stepResults.length == steps;
+	}
+
+	/**
+	 * Sends a single operation to the node chosen by the {@link NodeSelectionStrategy}. If that node can't be reached, it is set offline and the next one is tried.
+	 * @return the result of the operation
+	 * @throws ComputeException if no node is available, the response was tampered or a division by 0 occurred
+	 */
+	private String compute(String leftOperand, String operator, String rightOperand, AtomicInteger nrOfOperations) throws ComputeException {
+		String message = "!compute "+leftOperand +" " +operator+" "+rightOperand;
+		while(true){
+			NodeInfo node = cloudController.selectNode(operator, rightOperand);
+			if(node == null){
+				throw new ComputeException("No nodes available for at least one operation.", false);
+			}
+			String result;
+			try{
+				result = nodeConnectionPool.send(node, message);
+			}
+			catch(IntegrityException e){
+				throw new ComputeException("Incorrect Hash", false);
+			}
+			catch(NodeBusyException e){
+				throw new ComputeException("The nodes are busy, please try again later.", false);
+			}
+			catch(IOException e){
+				node.setStatus(false);
+				nodeConnectionPool.closeConnections(node);
+				continue;
+			}
+			if(result.startsWith("!tampered")){
+				throw new ComputeException(result, false);
+			}
+			nrOfOperations.incrementAndGet();
+			if(result.contains("Error: division by 0")){
+				throw new ComputeException(result, true);
+			}
+			//at this point, the request has been processed successfully.
+			increaseUsage(node, result);
+			return result;
+		}
+	}
+
+	/**
+	 * Increases the usage of the node by 50 credits per digit of the result.
+	 */
+	private void increaseUsage(NodeInfo node, String result){
+		if(result.startsWith("-")){
+			node.increaseUsage(50*(result.length()-1));
+		}
+		else{
+			node.increaseUsage(50*result.length());
+		}
+	}
+}
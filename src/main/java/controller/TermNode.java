@@ -0,0 +1,70 @@
+package controller;
+
+/**
+ * A node of the tree of a mathematical term, see {@link TermPlanner}. It is either an operand or an operation with two sub-terms.
+ */
+public class TermNode {
+
+	private String operand;
+	private TermNode left;
+	private String operator;
+	private TermNode right;
+
+	public TermNode(String operand) {
+		this.operand = operand;
+	}
+
+	public TermNode(TermNode left, String operator, TermNode right) {
+		this.left = left;
+		this.operator = operator;
+		this.right = right;
+	}
+
+	public boolean isOperand(){
+		return operand != null;
+	}
+
+	public String getOperand() {
+		return operand;
+	}
+
+	public TermNode getLeft() {
+		return left;
+	}
+
+	public String getOperator() {
+		return operator;
+	}
+
+	public TermNode getRight() {
+		return right;
+	}
+
+	/**
+	 * @return the number of operations of this term
+	 */
+	public int getNrOfOperations(){
+		if(isOperand()){
+			return 0;
+		}
+		return left.getNrOfOperations() + 1 + right.getNrOfOperations();
+	}
+
+	/**
+	 * @return the number of operations which have to be performed one after another
+	 */
+	public int getDepth(){
+		if(isOperand()){
+			return 0;
+		}
+		return Math.max(left.getDepth(), right.getDepth()) + 1;
+	}
+
+	@Override
+	public String toString(){
+		if(isOperand()){
+			return operand;
+		}
+		return "(" + left + " " + operator + " " + right + ")";
+	}
+}
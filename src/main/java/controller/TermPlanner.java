@@ -0,0 +1,156 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the term of a !compute request into a tree of {@link TermNode}s. Two modes are supported:
+ * <ul>
+ * <li>sequential: the term is evaluated strictly from left to right, every operation depends on the previous one.</li>
+ * <li>precedence: * and / bind stronger than + and -, and sub-terms can be grouped with parentheses.
+ * Runs of the same associative operator (+ or *) are arranged as a balanced tree, so that independent sub-terms can be computed concurrently.</li>
+ * </ul>
+ */
+public class TermPlanner {
+
+	public static final String SEQUENTIAL = "sequential";
+	public static final String PRECEDENCE = "precedence";
+	private static final String INVALID_TERM = "Invalid term.";
+
+	private String mode;
+
+	public TermPlanner(String mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * @param tokens the operands and operators of the term
+	 * @return the tree of the term
+	 * @throws ComputeException if the term is malformed
+	 */
+	public TermNode plan(String[] tokens) throws ComputeException {
+		if(mode.equals(PRECEDENCE)){
+			List<String> separated = separateParentheses(tokens);
+			int[] position = {0};
+			TermNode term = parseSum(separated, position);
+			if(position[0] != separated.size()){
+				throw new ComputeException(INVALID_TERM, false);
+			}
+			return term;
+		}
+		if(tokens.length == 0){
+			throw new ComputeException(INVALID_TERM, false);
+		}
+		TermNode term = new TermNode(tokens[0]);
+		for(int i = 2; i<tokens.length; i = i+2){
+			term = new TermNode(term, tokens[i-1], new TermNode(tokens[i]));
+		}
+		return term;
+	}
+
+	private List<String> separateParentheses(String[] tokens){
+		List<String> separated = new ArrayList<String>();
+		for(String token : tokens){
+			int closing = 0;
+			while(token.startsWith("(")){
+				separated.add("(");
+				token = token.substring(1);
+			}
+			while(token.endsWith(")")){
+				closing++;
+				token = token.substring(0, token.length()-1);
+			}
+			if(!token.isEmpty()){
+				separated.add(token);
+			}
+			for(int i = 0; i<closing; i++){
+				separated.add(")");
+			}
+		}
+		return separated;
+	}
+
+	/**
+	 * sum := product (('+' | '-') product)*
+	 */
+	private TermNode parseSum(List<String> tokens, int[] position) throws ComputeException {
+		List<TermNode> terms = new ArrayList<TermNode>();
+		List<String> operators = new ArrayList<String>();
+		terms.add(parseProduct(tokens, position));
+		while(position[0]<tokens.size() && (tokens.get(position[0]).equals("+") || tokens.get(position[0]).equals("-"))){
+			operators.add(tokens.get(position[0]++));
+			terms.add(parseProduct(tokens, position));
+		}
+		return combine(terms, operators, "+");
+	}
+
+	/**
+	 * product := factor (('*' | '/') factor)*
+	 */
+	private TermNode parseProduct(List<String> tokens, int[] position) throws ComputeException {
+		List<TermNode> terms = new ArrayList<TermNode>();
+		List<String> operators = new ArrayList<String>();
+		terms.add(parseFactor(tokens, position));
+		while(position[0]<tokens.size() && (tokens.get(position[0]).equals("*") || tokens.get(position[0]).equals("/"))){
+			operators.add(tokens.get(position[0]++));
+			terms.add(parseFactor(tokens, position));
+		}
+		return combine(terms, operators, "*");
+	}
+
+	/**
+	 * factor := operand | '(' sum ')'
+	 */
+	private TermNode parseFactor(List<String> tokens, int[] position) throws ComputeException {
+		if(position[0] >= tokens.size()){
+			throw new ComputeException(INVALID_TERM, false);
+		}
+		String token = tokens.get(position[0]++);
+		if(token.equals("(")){
+			TermNode term = parseSum(tokens, position);
+			if(position[0] >= tokens.size() || !tokens.get(position[0]++).equals(")")){
+				throw new ComputeException(INVALID_TERM, false);
+			}
+			return term;
+		}
+		if(token.equals(")") || isOperator(token)){
+			throw new ComputeException(INVALID_TERM, false);
+		}
+		return new TermNode(token);
+	}
+
+	/**
+	 * Combines the terms from left to right, a run of the associative operator is combined as a balanced tree instead.
+	 */
+	private TermNode combine(List<TermNode> terms, List<String> operators, String associativeOperator){
+		TermNode result = terms.get(0);
+		int i = 0;
+		while(i<operators.size()){
+			if(!operators.get(i).equals(associativeOperator)){
+				result = new TermNode(result, operators.get(i), terms.get(i+1));
+				i++;
+				continue;
+			}
+			List<TermNode> run = new ArrayList<TermNode>();
+			run.add(result);
+			while(i<operators.size() && operators.get(i).equals(associativeOperator)){
+				run.add(terms.get(i+1));
+				i++;
+			}
+			result = balance(run, 0, run.size(), associativeOperator);
+		}
+		return result;
+	}
+
+	private TermNode balance(List<TermNode> run, int from, int to, String operator){
+		if(to - from == 1){
+			return run.get(from);
+		}
+		int middle = (from + to)/2;
+		return new TermNode(balance(run, from, middle, operator), operator, balance(run, middle, to, operator));
+	}
+
+	private boolean isOperator(String token){
+		return token.equals("+") || token.equals("-") || token.equals("*") || token.equals("/");
+	}
+}
@@ -0,0 +1,62 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.UserInfo;
+
+/**
+ * Keeps all users of the cloud controller, indexed by username.
+ * A logged in user is addressed by its {@link UserInfo}, which stays the same for the whole lifetime of the cloud controller,
+ * so login and credit operations neither scan the users nor lock anything but the user itself.
+ */
+public class UserDirectory {
+
+	private ConcurrentHashMap<String, UserInfo> usersByName;
+	private List<UserInfo> users;
+
+	public UserDirectory() {
+		this.usersByName = new ConcurrentHashMap<String, UserInfo>();
+		this.users = new ArrayList<UserInfo>();
+	}
+
+	/**
+	 * Adds a user, unless a user with the same name already exists.
+	 * @param user
+	 * @return true if the user was added
+	 */
+	public boolean add(UserInfo user){
+		if(usersByName.putIfAbsent(user.getUsername(), user) != null){
+			return false;
+		}
+		synchronized(users){
+			users.add(user);
+		}
+		return true;
+	}
+
+	/**
+	 * @param username
+	 * @return the user with the given name or null if no such user exists
+	 */
+	public UserInfo get(String username){
+		return usersByName.get(username);
+	}
+
+	/**
+	 * @return all users in the order they were added
+	 */
+	public List<UserInfo> getUsers(){
+		synchronized(users){
+			return new ArrayList<UserInfo>(users);
+		}
+	}
+
+	/**
+	 * @return the number of users
+	 */
+	public int size(){
+		return usersByName.size();
+	}
+}
@@ -0,0 +1,130 @@
+package controller;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.UserInfo;
+
+/**
+ * Reads the users of the cloud controller from the file given by users.file in a single pass and adds them to a {@link UserDirectory}.
+ * Two formats are supported, chosen by the extension of the file:
+ * <ul>
+ * <li>.csv: one user per line as username,password,credits</li>
+ * <li>otherwise the format of user.properties, i.e. the lines username.credits = ... and username.password = ...
+ * (comments, blank lines and both = and : as separator, but no escape sequences or continued lines)</li>
+ * </ul>
+ * Every user is added to the directory as soon as its line (or, for user.properties, the second of its two lines) is read,
+ * so only the users whose credits or password are still missing are held aside. Users are therefore added in the order in which they are complete.
+ * Incomplete or malformed users are skipped, and so are further lines of a user which was already added.
+ */
+public class UserLoader {
+
+	private static final String CREDITS = ".credits";
+	private static final String PASSWORD = ".password";
+
+	/**
+	 * @param path the user file
+	 * @param users the directory to which the users are added
+	 * @return the number of added users
+	 * @throws IOException if the file can't be read
+	 */
+	public static int load(String path, UserDirectory users) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8), 1 << 16);
+		try {
+			if(path.endsWith(".csv")){
+				return loadCsv(reader, users);
+			}
+			return loadProperties(reader, users);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private static int loadCsv(BufferedReader reader, UserDirectory users) throws IOException {
+		int added = 0;
+		String line;
+		while((line = reader.readLine()) != null){
+			int first = line.indexOf(',');
+			int second = line.indexOf(',', first+1);
+			if(line.startsWith("#") || first <= 0 || second<0){
+				continue;
+			}
+			Long credits = parseCredits(line.substring(second+1));
+			if(credits != null && users.add(new UserInfo(line.substring(0, first).trim(), line.substring(first+1, second).trim(), credits, false))){
+				added++;
+			}
+		}
+		return added;
+	}
+
+	private static int loadProperties(BufferedReader reader, UserDirectory users) throws IOException {
+		//users of which only one of the two lines was read so far
+		Map<String, String[]> pending = new HashMap<String, String[]>();
+		int added = 0;
+		String line;
+		while((line = reader.readLine()) != null){
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#") || line.startsWith("!")){
+				continue;
+			}
+			int separator = separatorOf(line);
+			if(separator<0){
+				continue;
+			}
+			String key = line.substring(0, separator).trim();
+			String value = line.substring(separator+1).trim();
+			int field;
+			if(key.endsWith(CREDITS)){
+				key = key.substring(0, key.length()-CREDITS.length());
+				field = 0;
+			}
+			else if(key.endsWith(PASSWORD)){
+				key = key.substring(0, key.length()-PASSWORD.length());
+				field = 1;
+			}
+			else{
+				continue;
+			}
+			String[] fields = pending.get(key);
+			if(fields == null){
+				fields = new String[2];
+				pending.put(key, fields);
+			}
+			fields[field] = value;
+			if(fields[0] == null || fields[1] == null){
+				continue;
+			}
+			pending.remove(key);
+			Long credits = parseCredits(fields[0]);
+			if(credits != null && users.add(new UserInfo(key, fields[1], credits, false))){
+				added++;
+			}
+		}
+		return added;
+	}
+
+	private static int separatorOf(String line){
+		for(int i = 0; i<line.length(); i++){
+			char c = line.charAt(i);
+			if(c == '=' || c == ':'){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static Long parseCredits(String credits){
+		try {
+			return Long.valueOf(credits.trim());
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -1,18 +1,38 @@
 package model;
 
 import java.io.Serializable;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 
 /**
  * Represents a Data Transfer Object (DTO), contains all the relevant information of a log file.
+ * The time of the request is kept as ms since the epoch as well, so log entries can be ordered without parsing their timestamps.
  */
 public class ComputationRequestInfo implements Serializable {
 
 	private static final long serialVersionUID = 8097915840693170234L;
+	private final static ThreadLocal<SimpleDateFormat> threadLocal = new ThreadLocal<SimpleDateFormat>() {
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyyMMdd_HHmmss.SSS");
+		};
+	};
+	private long time;
 	private String timestamp;
 	private String stringRepresentation;
 
 	public ComputationRequestInfo(String filename, String nodeComponentName, String request, String result){
 		this.timestamp = filename.substring(0,19);
+		try {
+			this.time = threadLocal.get().parse(timestamp).getTime();
+		}
+		catch (ParseException e) {}
+		this.stringRepresentation = timestamp + " ["+nodeComponentName+"]: "+request+" = "+result;
+	}
+
+	public ComputationRequestInfo(long time, String nodeComponentName, String request, String result){
+		this.time = time;
+		this.timestamp = threadLocal.get().format(new Date(time));
 		this.stringRepresentation = timestamp + " ["+nodeComponentName+"]: "+request+" = "+result;
 	}
 	
@@ -24,8 +44,15 @@ public class ComputationRequestInfo implements Serializable {
 		return timestamp;
 	}
 
+	/**
+	 * @return the time of the request in ms since the epoch
+	 */
+	public long getTime(){
+		return time;
+	}
+
 	@Override
 	public String toString(){
 		return stringRepresentation;
 	}
-}
\ No newline at end of file
+}
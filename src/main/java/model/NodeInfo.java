@@ -1,26 +1,33 @@
 package model;
 
 import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represents all the information of a node.
+ * Usage, status and last seen time are kept in atomic variables, so they can be read and updated by the client handlers,
+ * the node listener and the alive checker without locking. Usage and status are packed into one immutable {@link Snapshot},
+ * which is replaced as a whole, so they are always read together consistently.
  */
 public class NodeInfo {
 	
 	private InetAddress address;
 	private int tcpPort;
 	private String operators;
-	private long usage;
-	private boolean online;
-	private long lastSeen;
+	private AtomicReference<Snapshot> state;
+	private AtomicLong lastSeen;
+	private volatile NodeObserver observer;
+	private AtomicInteger outstandingRequests = new AtomicInteger();
+	private AtomicLong latency = new AtomicLong();
 	
 	public NodeInfo(InetAddress address, int tcpPort, String operators, long usage, boolean online, long lastSeen) {
 		this.address = address;
 		this.tcpPort = tcpPort;
 		this.operators = operators;
-		this.usage = usage;
-		this.online = online;
-		this.lastSeen = lastSeen;
+		this.state = new AtomicReference<Snapshot>(new Snapshot(online, usage));
+		this.lastSeen = new AtomicLong(lastSeen);
 	}
 
 	public InetAddress getAddress() {
@@ -35,35 +42,136 @@ public class NodeInfo {
 		return operators;
 	}
 	
-	public synchronized long getUsage() {
-		return usage;
+	public long getUsage() {
+		return state.get().getUsage();
 	}
 
-	public synchronized void increaseUsage(long usage){
-		this.usage = this.usage + usage;
+	public void increaseUsage(long usage){
+		while(true){
+			Snapshot current = state.get();
+			if(state.compareAndSet(current, new Snapshot(current.isOnline(), current.getUsage()+usage))){
+				break;
+			}
+		}
+		notifyObserver();
 	}
 
-	public synchronized boolean isOnline() {
-		return online;
+	public boolean isOnline() {
+		return state.get().isOnline();
 	}
 	
-	public synchronized void setStatus(boolean status){
-		online = status;
+	public void setStatus(boolean status){
+		while(true){
+			Snapshot current = state.get();
+			if(current.isOnline() == status){
+				return;
+			}
+			if(state.compareAndSet(current, new Snapshot(status, current.getUsage()))){
+				break;
+			}
+		}
+		notifyObserver();
 	}
 	
-	public synchronized long getLastSeen(){
-		return lastSeen;
+	public long getLastSeen(){
+		return lastSeen.get();
 	}
 	
-	public synchronized void setLastSeen(long time){
-		lastSeen = time;
+	public void setLastSeen(long time){
+		lastSeen.set(time);
+	}
+
+	/**
+	 * @return the status and the usage of this node at one point in time
+	 */
+	public Snapshot snapshot(){
+		return state.get();
 	}
 	
+	/**
+	 * Must be called before a request is sent to this node.
+	 */
+	public void requestStarted(){
+		outstandingRequests.incrementAndGet();
+	}
+
+	/**
+	 * Must be called after the response of a request was received, or the request failed.
+	 * @param responseTime
+	 *            the response time in nanoseconds, or a negative value if the request failed
+	 */
+	public void requestFinished(long responseTime){
+		outstandingRequests.decrementAndGet();
+		if(responseTime<0){
+			return;
+		}
+		while(true){
+			long current = latency.get();
+			//exponentially weighted moving average with a weight of 1/5 for the new sample
+			long updated = current == 0 ? responseTime : current + (responseTime-current)/5;
+			if(latency.compareAndSet(current, updated)){
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of requests which were sent to this node and are not answered yet
+	 */
+	public int getOutstandingRequests(){
+		return outstandingRequests.get();
+	}
+
+	/**
+	 * @return the moving average of the response time in nanoseconds, 0 if no request was answered yet
+	 */
+	public long getLatency(){
+		return latency.get();
+	}
+
+	/**
+	 * @param observer
+	 *            gets notified whenever the usage or the status of this node changes
+	 */
+	public void setObserver(NodeObserver observer){
+		this.observer = observer;
+	}
+
+	private void notifyObserver(){
+		NodeObserver observer = this.observer;
+		if(observer != null){
+			observer.nodeChanged(this);
+		}
+	}
+
 	@Override
-	public synchronized String toString(){
-		if(online){
-			return "IP: "+getAddress().getHostAddress()+" Port: "+getTcpPort()+ " online Usage: "+usage;
+	public String toString(){
+		Snapshot snapshot = snapshot();
+		if(snapshot.isOnline()){
+			return "IP: "+getAddress().getHostAddress()+" Port: "+getTcpPort()+ " online Usage: "+snapshot.getUsage();
+		}
+		return "IP: "+getAddress().getHostAddress()+" Port: "+getTcpPort()+ " offline Usage: "+snapshot.getUsage();
+	}
+
+	/**
+	 * The status and the usage of a node at one point in time.
+	 */
+	public static class Snapshot {
+
+		private final boolean online;
+		private final long usage;
+
+		public Snapshot(boolean online, long usage) {
+			this.online = online;
+			this.usage = usage;
+		}
+
+		public boolean isOnline() {
+			return online;
+		}
+
+		public long getUsage() {
+			return usage;
 		}
-		return "IP: "+getAddress().getHostAddress()+" Port: "+getTcpPort()+ " offline Usage: "+usage;
 	}
 }
@@ -0,0 +1,13 @@
+package model;
+
+/**
+ * Gets notified whenever the usage or the status of a {@link NodeInfo} changes.
+ */
+public interface NodeObserver {
+
+	/**
+	 * @param node
+	 *            the node whose usage or status changed
+	 */
+	void nodeChanged(NodeInfo node);
+}
@@ -1,28 +1,58 @@
 package model;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 import admin.INotificationCallback;
 
 /**
  * Represents all the information of a user containing the username, password, credits and if the user is online or offline.
+ * Credits and status are atomic, so the client handlers of different users never contend.
  */
 public class UserInfo{
 
 	private String username;
 	private String password;
-	private long credits;
-	private boolean online;
-	private INotificationCallback callback;
-	private long threshold;
+	private AtomicLong credits;
+	private AtomicBoolean online;
+	private volatile INotificationCallback callback;
+	private volatile long threshold;
 	
 	public UserInfo(String username, String password, long credits, boolean online) {
 		this.username = username;
 		this.password = password;
-		this.credits = credits;
-		this.online = online;
+		this.credits = new AtomicLong(credits);
+		this.online = new AtomicBoolean(online);
 	}
 
 	public void setCredits(long credits){
-		this.credits = credits;
+		this.credits.set(credits);
+	}
+
+	/**
+	 * Withdraws the given amount of credits, if the user has at least that many credits.
+	 * @param credits
+	 * @return true if the credits were withdrawn
+	 */
+	public boolean withdraw(long credits){
+		while(true){
+			long current = this.credits.get();
+			if(current<credits){
+				return false;
+			}
+			if(this.credits.compareAndSet(current, current-credits)){
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Adds the given amount of credits, which may be negative.
+	 * @param credits
+	 * @return the new amount of credits
+	 */
+	public long addCredits(long credits){
+		return this.credits.addAndGet(credits);
 	}
 
 	public String getUsername() {
@@ -34,23 +64,39 @@ public class UserInfo{
 	}
 
 	public long getCredits() {
-		return credits;
+		return credits.get();
 	}
 
 	public boolean isOnline() {
-		return online;
+		return online.get();
 	}
 	
 	public void setStatus(boolean status){
-		online = status;
+		online.set(status);
+	}
+
+	/**
+	 * Sets the status to online, if the user is offline.
+	 * @return true if the user was offline
+	 */
+	public boolean goOnline(){
+		return online.compareAndSet(false, true);
 	}
 	
-	public void subscribe(INotificationCallback callback, long threshold){
-		this.callback = callback;
+	/**
+	 * Registers the callback, if there is no callback registered yet.
+	 * @return true if the callback was registered
+	 */
+	public synchronized boolean subscribe(INotificationCallback callback, long threshold){
+		if(this.callback != null){
+			return false;
+		}
 		this.threshold = threshold;
+		this.callback = callback;
+		return true;
 	}
 	
-	public void unsubscribe(){
+	public synchronized void unsubscribe(){
 		callback = null;
 		threshold = 0;
 	}
@@ -66,8 +112,8 @@ public class UserInfo{
 	@Override
 	public String toString() {
 		if(isOnline()){
-			return username + " online Credits: "+credits;
+			return username + " online Credits: "+getCredits();
 		}
-		return username + " offline Credits: "+credits;
+		return username + " offline Credits: "+getCredits();
 	}
 }
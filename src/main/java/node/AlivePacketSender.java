@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.util.concurrent.ExecutorService;
 
 /**
  * From time to time, the node needs to send !alive packets to the cloud controller to demonstrate it is still online and is ready to handle client requests.
@@ -20,9 +21,10 @@ public class AlivePacketSender implements Runnable {
 	private Node node;
 	private int nodeRmin;
 	private DatagramSocket socket;
+	private ExecutorService executor;
 	private boolean running = true;
 
-	public AlivePacketSender(int tcpPort, String controllerHost, int controllerUdpPort, int nodeAlive, String nodeOperators, Node node, int nodeRmin) {
+	public AlivePacketSender(int tcpPort, String controllerHost, int controllerUdpPort, int nodeAlive, String nodeOperators, Node node, int nodeRmin, ExecutorService executor) {
 		this.tcpPort = tcpPort;
 		this.controllerHost = controllerHost;
 		this.controllerUdpPort = controllerUdpPort;
@@ -30,6 +32,7 @@ public class AlivePacketSender implements Runnable {
 		this.nodeOperators = nodeOperators;
 		this.node = node;
 		this.nodeRmin = nodeRmin;
+		this.executor = executor;
 	}
 
 	/**
@@ -47,7 +50,7 @@ public class AlivePacketSender implements Runnable {
 	public void run() {
 		try {
 			socket = new DatagramSocket();
-			new Negotiator(node, this, socket, controllerHost, controllerUdpPort, nodeRmin).negotiate();
+			new Negotiator(node, this, socket, controllerHost, controllerUdpPort, nodeRmin, executor).negotiate();
 			while(running){
 				String alivePacket = "!alive "+tcpPort+" "+nodeOperators;
 				byte[] buf = alivePacket.getBytes();
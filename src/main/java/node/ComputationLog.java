@@ -0,0 +1,457 @@
+package node;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the computations of a node, which replaces the log file per computation.
+ * <p>
+ * The computations are appended as binary records (timestamp, request, result, CRC32) to segment files segment-n.log in log.dir (see {@link SegmentWriter}).
+ * A single writer thread takes all records that were queued while it was busy and writes them at once (group commit), so the node answers
+ * a computation without waiting for the disk. The {@link LogQueue} holds at most log.queueCapacity records, log.overflow decides what happens if it is full.
+ * The log.durability property decides when the records are forced to the disk:
+ * <ul>
+ * <li>none: never, the operating system writes them eventually</li>
+ * <li>batch: once per group of records, records which were not forced yet are lost if the node crashes</li>
+ * <li>record: once per group of records, and {@link #append(String, String) append} waits until its record was forced</li>
+ * </ul>
+ * The timestamp of a computation is taken before it is queued, from a clock which never goes back behind the newest logged computation,
+ * so the log is ordered by time. Every segment has a {@link SegmentIndex}, which lets {@link #query(long, long, int, int) query} read only the requested page
+ * of a time range (see {@link LogReader}). A time range is read in chunks with a {@link LogCursor}.
+ * <p>
+ * The old format, one file per computation, can still be produced with {@link #export(File, String) export}.
+ * <p>
+ * A record longer than {@value #MAX_RECORD_LENGTH} bytes is not logged. If the writer fails, the log is stopped: the queued records and all further ones are dropped,
+ * and the failure is reported by {@link #getFailure() getFailure}.
+ */
+public class ComputationLog implements Runnable {
+
+	public static final String NONE = "none";
+	public static final String BATCH = "batch";
+	public static final String RECORD = "record";
+	public static final String BLOCK = "block";
+	public static final String DROP_OLDEST = "dropOldest";
+	public static final String SPILL = "spill";
+
+	static final int MAX_RECORD_LENGTH = 1 << 20;
+	private static final long SYNC_TIMEOUT = 5000;
+
+	private volatile boolean running = true;
+	private File dir;
+	private String durability;
+	private LogSegments segments;
+	private SegmentWriter segmentWriter;
+	private LogQueue queue;
+	private LogReader reader;
+	private AtomicLong clock = new AtomicLong();
+	private AtomicLong appended = new AtomicLong();
+	private volatile long written;
+	private volatile String failure;
+	private volatile boolean idle;
+	private volatile Thread writer;
+	private Object progress = new Object();
+	private CountDownLatch stopped;
+
+	public ComputationLog(String dir, String durability, long segmentSize, int maxSegments, int queueCapacity, String overflow) {
+		this.dir = new File(dir);
+		this.durability = durability;
+		this.segments = new LogSegments(this.dir);
+		this.segmentWriter = new SegmentWriter(segments, !durability.equals(NONE), segmentSize, maxSegments);
+		this.queue = new LogQueue(this.dir, overflow, queueCapacity, durability.equals(RECORD));
+		this.reader = new LogReader(segments);
+		this.stopped = new CountDownLatch(1);
+	}
+
+	/**
+	 * Opens the segments (see {@link SegmentWriter#open() open}) and moves the records, which were still in spill.log, into the newest one.
+	 * @throws IOException if the directory can't be written
+	 */
+	public void open() throws IOException {
+		segmentWriter.open();
+		queue.recover(segmentWriter);
+		clock.set(segmentWriter.getLastTimestamp());
+	}
+
+	/**
+	 * Queues a computation. If log.durability is record, waits until the computation was forced to the disk.
+	 * @param request the term of the computation
+	 * @param result the result or the reason of the failure
+	 * @return the queued computation
+	 */
+	public Entry append(String request, String result){
+		Entry entry = new Entry(nextTimestamp(), request, result);
+		appended.incrementAndGet();
+		if(failure != null){
+			queue.drop(entry);
+			return entry;
+		}
+		if(!entry.fits()){
+			System.err.println("The computation is too long for the computation log and is not logged: "+request.length()+" characters");
+			queue.drop(entry);
+			return entry;
+		}
+		queue.add(entry);
+		if(idle){
+			LockSupport.unpark(writer);
+		}
+		if(durability.equals(RECORD)){
+			awaitWritten(entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * @return the current time, or the newest timestamp taken so far if the system clock went back
+	 */
+	private long nextTimestamp(){
+		long now = System.currentTimeMillis();
+		while(true){
+			long last = clock.get();
+			if(now <= last){
+				return last;
+			}
+			if(clock.compareAndSet(last, now)){
+				return now;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of records which wait for the writer
+	 */
+	public int getQueueDepth(){
+		return queue.getDepth();
+	}
+
+	/**
+	 * @return the number of records which were discarded because the queue was full
+	 */
+	public long getDropped(){
+		return queue.getDropped();
+	}
+
+	/**
+	 * @return the number of records which were appended to spill.log because the queue was full
+	 */
+	public long getSpilled(){
+		return queue.getSpilled();
+	}
+
+	/**
+	 * @return the reason why the writer stopped, or null if it did not fail
+	 */
+	public String getFailure(){
+		return failure;
+	}
+
+	/**
+	 * @return all computations which were appended before, oldest first
+	 * @throws IOException
+	 */
+	public List<Entry> readAll() throws IOException {
+		return query(Long.MIN_VALUE, Long.MAX_VALUE, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param n
+	 * @return the most recent n computations which were appended before, oldest first
+	 * @throws IOException
+	 */
+	public List<Entry> readLast(int n) throws IOException {
+		awaitWritten(appended.get());
+		return reader.query(Long.MIN_VALUE, Long.MAX_VALUE, (int) Math.max(0, segments.count()-n), n);
+	}
+
+	/**
+	 * Reads a page of the computations of a time range, see {@link LogReader}.
+	 * @param from the earliest timestamp, inclusive
+	 * @param to the latest timestamp, exclusive
+	 * @param offset the number of computations of the range which are skipped
+	 * @param limit the maximum number of returned computations
+	 * @return the computations which were appended before, oldest first
+	 * @throws IOException
+	 */
+	public List<Entry> query(long from, long to, int offset, int limit) throws IOException {
+		awaitWritten(appended.get());
+		return reader.query(from, to, offset, limit);
+	}
+
+	/**
+	 * Opens a cursor on the computations of a time range, see {@link LogCursor}.
+	 * @param from the earliest timestamp, inclusive
+	 * @param to the latest timestamp, exclusive
+	 * @param offset the number of computations of the range which are skipped
+	 * @return the cursor, positioned before the first requested computation
+	 */
+	public LogCursor cursor(long from, long to, int offset){
+		awaitWritten(appended.get());
+		return reader.cursor(from, to, offset);
+	}
+
+	/**
+	 * Writes every computation into a file of its own, named after the time of the computation and the node, which contains the request and the result
+	 * on two lines. Computations of the same millisecond get a counter after the name of the node.
+	 * @param target the directory of the files
+	 * @param componentName the name of the node
+	 * @return the number of written files
+	 * @throws IOException
+	 */
+	public int export(File target, String componentName) throws IOException {
+		target.mkdirs();
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss.SSS");
+		String previousName = null;
+		int duplicates = 0;
+		int exported = 0;
+		for(Entry entry : readAll()){
+			String name = entry.getLegacyName(sdf, componentName);
+			duplicates = name.equals(previousName) ? duplicates+1 : 0;
+			previousName = name;
+			if(duplicates>0){
+				name = name.substring(0, name.length()-Entry.LEGACY_SUFFIX.length())+"-"+duplicates+Entry.LEGACY_SUFFIX;
+			}
+			BufferedWriter writer = new BufferedWriter(new PrintWriter(new File(target, name)));
+			try {
+				writer.write(entry.getRequest());
+				writer.newLine();
+				writer.write(entry.getResult());
+			}
+			finally {
+				writer.close();
+			}
+			exported++;
+		}
+		return exported;
+	}
+
+	/**
+	 * Writes the remaining computations and stops the writer.
+	 */
+	public void close(){
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			stopped.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {}
+	}
+
+	/**
+	 * Writes the queued computations until the log is closed.
+	 */
+	@Override
+	public void run() {
+		writer = Thread.currentThread();
+		List<Entry> batch = new ArrayList<Entry>();
+		try {
+			while(running || !queue.isEmpty() || queue.isSpilling()){
+				if(queue.isEmpty() && !queue.isSpilling()){
+					idle = true;
+					if(queue.isEmpty() && !queue.isSpilling() && running){
+						LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+					}
+					idle = false;
+					continue;
+				}
+				queue.drain(batch);
+				if(queue.isSpilling()){
+					queue.unspill(batch, segmentWriter);
+				}
+				else if(!batch.isEmpty()){
+					segmentWriter.write(batch);
+				}
+				synchronized(progress){
+					written = written + batch.size();
+					for(Entry entry : batch){
+						entry.markDone();
+					}
+					progress.notifyAll();
+				}
+				batch.clear();
+			}
+		}
+		catch (IOException e) {
+			failure = e.toString();
+			running = false;
+			System.err.println("Could not write the computation log in "+dir+", computations are no longer logged: "+e.getMessage());
+		}
+		finally {
+			segmentWriter.close();
+			queue.close();
+			stopped.countDown();
+			synchronized(progress){
+				if(failure != null){
+					for(Entry entry : batch){
+						if(!entry.isDone()) queue.drop(entry);
+					}
+					batch.clear();
+					queue.drain(batch);
+					for(Entry entry : batch){
+						queue.drop(entry);
+					}
+				}
+				progress.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the given number of records was written or dropped, at most {@value #SYNC_TIMEOUT} ms.
+	 */
+	private void awaitWritten(long sequence){
+		long deadline = System.currentTimeMillis()+SYNC_TIMEOUT;
+		synchronized(progress){
+			while(written+queue.getDropped()<sequence && stopped.getCount()>0){
+				if(!await(deadline)){
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits until the record was written, spilled or dropped, at most {@value #SYNC_TIMEOUT} ms.
+	 */
+	private void awaitWritten(Entry entry){
+		long deadline = System.currentTimeMillis()+SYNC_TIMEOUT;
+		synchronized(progress){
+			while(!entry.isDone() && stopped.getCount()>0){
+				if(!await(deadline)){
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return false if the deadline has passed or the thread was interrupted
+	 */
+	private boolean await(long deadline){
+		long remaining = deadline-System.currentTimeMillis();
+		if(remaining <= 0){
+			return false;
+		}
+		try {
+			progress.wait(remaining);
+			return true;
+		}
+		catch (InterruptedException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * A logged computation. Encoded as length, payload (timestamp, length of the request, request, length of the result, result) and CRC32 of the payload.
+	 */
+	public static class Entry {
+
+		static final int MIN_LENGTH = 8+4+4;
+		static final String LEGACY_SUFFIX = ".log";
+
+		private final long timestamp;
+		private final String request;
+		private final String result;
+		private volatile boolean done;
+
+		public Entry(long timestamp, String request, String result) {
+			this.timestamp = timestamp;
+			this.request = request;
+			this.result = result;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public String getRequest() {
+			return request;
+		}
+
+		public String getResult() {
+			return result;
+		}
+
+		/**
+		 * @return the name of the log file of this computation in the old format, yyyyMMdd_HHmmss.SSS_node.log
+		 */
+		public String getLegacyName(SimpleDateFormat sdf, String componentName){
+			return sdf.format(new Date(timestamp))+"_"+componentName+LEGACY_SUFFIX;
+		}
+
+		/**
+		 * Marks the computation as written, spilled or dropped.
+		 */
+		void markDone(){
+			done = true;
+		}
+
+		boolean isDone(){
+			return done;
+		}
+
+		/**
+		 * @return true if the payload is not longer than {@value ComputationLog#MAX_RECORD_LENGTH} bytes
+		 */
+		boolean fits(){
+			//a character takes at most 3 bytes in UTF-8, the exact length is only computed for long computations
+			if(MIN_LENGTH+3L*(request.length()+result.length()) <= MAX_RECORD_LENGTH){
+				return true;
+			}
+			return MIN_LENGTH+(long) request.getBytes(StandardCharsets.UTF_8).length+result.getBytes(StandardCharsets.UTF_8).length <= MAX_RECORD_LENGTH;
+		}
+
+		/**
+		 * @param timestamp the logged timestamp, which is only later than the one of the computation if it was queued after a later computation
+		 */
+		byte[] encode(long timestamp){
+			byte[] requestBytes = request.getBytes(StandardCharsets.UTF_8);
+			byte[] resultBytes = result.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer payload = ByteBuffer.allocate(8+4+requestBytes.length+4+resultBytes.length);
+			payload.putLong(timestamp);
+			payload.putInt(requestBytes.length);
+			payload.put(requestBytes);
+			payload.putInt(resultBytes.length);
+			payload.put(resultBytes);
+			CRC32 crc = new CRC32();
+			crc.update(payload.array());
+			ByteBuffer record = ByteBuffer.allocate(4+payload.capacity()+4);
+			record.putInt(payload.capacity());
+			record.put(payload.array());
+			record.putInt((int) crc.getValue());
+			return record.array();
+		}
+
+		/**
+		 * @return the computation, or null if the lengths of the request and the result do not match the payload
+		 */
+		static Entry decode(byte[] payload){
+			ByteBuffer buffer = ByteBuffer.wrap(payload);
+			long timestamp = buffer.getLong();
+			int requestLength = buffer.getInt();
+			if(requestLength<0 || requestLength>buffer.remaining()-4){
+				return null;
+			}
+			byte[] request = new byte[requestLength];
+			buffer.get(request);
+			int resultLength = buffer.getInt();
+			if(resultLength != buffer.remaining()){
+				return null;
+			}
+			byte[] result = new byte[resultLength];
+			buffer.get(result);
+			return new Entry(timestamp, new String(request, StandardCharsets.UTF_8), new String(result, StandardCharsets.UTF_8));
+		}
+	}
+}
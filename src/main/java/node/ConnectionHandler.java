@@ -0,0 +1,312 @@
+package node;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.PushbackInputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+import javax.crypto.Mac;
+
+import channel.BufferPool;
+import channel.Buffers;
+import channel.Channel;
+import channel.FramedBufferChannel;
+import channel.FramedChannel;
+import channel.HmacBufferChannel;
+import channel.IntegrityException;
+import channel.TcpChannel;
+import util.CryptoPool;
+import model.ComputationRequestInfo;
+
+import org.bouncycastle.util.encoders.Base64;
+
+/**
+ * Serves the requests of a single connection. In case of !compute request, if the calculation is successful, the resulting number is sent back to the cloud controller.
+ * Otherwise, the cloud controller is informed about the reason of the failure. Each time, the computation is logged (see {@link ComputationLog}). See the {@link #run() run} method for more details.
+ */
+public class ConnectionHandler implements Runnable {
+
+	private static final int LOG_CHUNK = 1000;
+	private static final String INVALID_REQUEST = "Error: invalid request";
+
+	private Socket clientSocket;
+	private Node node;
+	private int nodeRmin;
+	private Listener listener;
+	private Channel channel;
+	private Key secretKey;
+	private BufferPool bufferPool;
+
+	public ConnectionHandler(Socket clientSocket, Node node, int nodeRmin, Key secretKey, BufferPool bufferPool, Listener listener){
+		this.clientSocket = clientSocket;
+		this.node = node;
+		this.nodeRmin = nodeRmin;
+		this.secretKey = secretKey;
+		this.bufferPool = bufferPool;
+		this.listener = listener;
+	}
+
+	/**
+	 * @return the Mac of the calling thread, see {@link CryptoPool}
+	 */
+	private Mac mac(){
+		try {
+			return CryptoPool.getMac("HmacSHA256", secretKey);
+		} catch (NoSuchAlgorithmException e) {
+			System.err.println("Algorithm HmacSHA256 not found.");
+		} catch (InvalidKeyException e) {
+			System.err.println("Invalid Key: please check the length and encoding of the key.");
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the connection.
+	 */
+	public void stopRunning(){
+		try {
+			clientSocket.close();
+		}
+		catch (IOException e) {}
+	}
+
+	/**
+	 * Checks whether the HMAC of the received plaintext is equal to the HMAC that was sent by the communication partner
+	 * @param receivedHMAC
+	 * @param receivedPlainText
+	 * @return true, if the HMACs are equal
+	 */
+	private boolean HMACsAreEqual(String receivedHMAC, String receivedPlaintext){
+		// computedHash is the HMAC of the received plaintext
+		Mac hMac = mac();
+		hMac.update(receivedPlaintext.getBytes());
+		byte[] computedHash = hMac.doFinal();
+		// receivedHash is the HMAC that was sent by the communication partner
+		byte[] receivedHash = Base64.decode(receivedHMAC.getBytes());
+		return MessageDigest.isEqual(computedHash, receivedHash);
+	}
+
+	/**
+	 * Prepends a given message with a new HMAC
+	 * @param message
+	 * @return the message with the HMAC prepended
+	 */
+	private String prependResponseWithHMAC(String message){
+		Mac hMac = mac();
+		hMac.update(message.getBytes());
+		return new String(Base64.encode(hMac.doFinal())) +" " + message;
+	}
+
+	/**
+	 * Performs a single operation.
+	 * @return the resulting number or the reason of the failure
+	 */
+	private String calculate(String leftOperand, String operator, String rightOperand){
+		String response = "";
+		if(operator.equals("+")) response = ""+(Integer.valueOf(leftOperand) + Integer.valueOf(rightOperand));
+		if(operator.equals("-")) response = ""+(Integer.valueOf(leftOperand) - Integer.valueOf(rightOperand));
+		if(operator.equals("*")) response = ""+(Integer.valueOf(leftOperand) * Integer.valueOf(rightOperand));
+		if(operator.equals("/")) {
+			if(Integer.valueOf(rightOperand) != 0){
+				double tmp = (Double.valueOf(leftOperand) / Double.valueOf(rightOperand));
+				if(tmp<0){
+					response = ""+(-Math.round(-tmp));
+				}
+				else{
+					response = ""+Math.round(tmp);
+				}
+			}
+			else{
+				response = "Error: division by 0";
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Performs a single operation and creates its log file.
+	 * @return the resulting number or the reason of the failure
+	 */
+	private String compute(String leftOperand, String operator, String rightOperand){
+		String response = calculate(leftOperand, operator, rightOperand);
+		node.createLogFile(leftOperand + " " +operator + " "+rightOperand, response);
+		return response;
+	}
+
+	/**
+	 * Performs the chain of operations, which starts with the operand at the given index, and creates a log file for every step,
+	 * just like a !compute request per step would.
+	 * @return the results of the steps, separated by spaces
+	 */
+	private String computeBatch(String[] chain, int start){
+		String response = "";
+		String result = chain[start];
+		for(int i = start+2; i<chain.length; i = i+2){
+			result = compute(result, chain[i-1], chain[i]);
+			response = response.isEmpty() ? result : response+" "+result;
+			if(result.startsWith("Error")){
+				break;
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Serves the !compute and !computeBatch requests of the cloud controller on a framed connection.
+	 * The HMAC is checked on the received buffer, and every response is written from the same pooled buffer.
+	 * Every request is answered, a request which can't be performed with {@value #INVALID_REQUEST}, so the cloud controller never waits for a response in vain.
+	 */
+	private void serveFrames() throws IOException {
+		HmacBufferChannel bufferChannel = new HmacBufferChannel(new FramedBufferChannel(clientSocket.getChannel(), bufferPool), secretKey);
+		ByteBuffer[] response = {bufferPool.acquire()};
+		try {
+			while(true){
+				String result;
+				try {
+					String request[] = Buffers.split(bufferChannel.read());
+					if(request.length>1 && request[0].equals("!computeBatch")){
+						result = computeBatch(request, 1);
+					}
+					else if(request.length == 4 && request[0].equals("!compute")){
+						result = compute(request[1], request[2], request[3]);
+					}
+					else{
+						result = INVALID_REQUEST;
+					}
+				}
+				catch(NumberFormatException e){
+					result = INVALID_REQUEST;
+				}
+				catch(IntegrityException e){
+					result = "!tampered "+Buffers.decode(bufferChannel.getLastMessage());
+				}
+				ByteBuffer buffer = Buffers.encode(result, response[0]);
+				if(buffer != response[0]){
+					bufferChannel.write(new ByteBuffer[]{buffer}, 0, 1);
+				}
+				else{
+					bufferChannel.write(response, 0, 1);
+				}
+			}
+		}
+		finally {
+			bufferChannel.close();
+			bufferPool.release(response[0]);
+		}
+	}
+
+	/**
+	 * Reads requests from the cloud controller/node and performs the requested operations, until the communication partner closes the connection.
+	 * A !getLogs request is the only one after which the connection is closed by the node, since the logs are sent as a stream of objects.
+	 * With the arguments from, to (ms since the epoch), offset and limit it only returns that page of the log.
+	 * In any case the log entries are sent in ascending order of their time.
+	 * Requests are lines, unless the first byte of the connection is the preamble of a {@link FramedChannel}. Framed connections are only opened by the cloud controller,
+	 * they carry a binary HMAC in front of each request (see {@link HmacBufferChannel}).
+	 * A !computeBatch request carries a chain of operations, which are performed from left to right. The result of every step is sent back,
+	 * separated by spaces, so the last one is the result of the chain. The chain stops at the first failing step.
+	 */
+	@Override
+	public void run() {
+		try {
+			PushbackInputStream in = new PushbackInputStream(clientSocket.getInputStream());
+			int first = in.read();
+			if(first == -1){
+				return;
+			}
+			if(first == FramedChannel.PREAMBLE){
+				serveFrames();
+				return;
+			}
+			in.unread(first);
+			channel = new TcpChannel(clientSocket, in);
+			while(true){
+				String request = new String(channel.read());
+				String splittedExp[] = request.split("\\s+");
+				String response = "";
+
+				if(splittedExp[0].startsWith("!getLogs")){
+					ObjectOutputStream outputStream = new ObjectOutputStream(clientSocket.getOutputStream());
+					outputStream.flush();
+					long from = Long.MIN_VALUE;
+					long to = Long.MAX_VALUE;
+					int offset = 0;
+					int limit = Integer.MAX_VALUE;
+					if(splittedExp.length == 5){
+						from = Long.parseLong(splittedExp[1]);
+						to = Long.parseLong(splittedExp[2]);
+						offset = Integer.parseInt(splittedExp[3]);
+						limit = Integer.parseInt(splittedExp[4]);
+					}
+					//the log is read and sent in chunks, so it is never held in memory as a whole.
+					//the cursor continues after the last sent entry, even if older segments are deleted in the meantime
+					LogCursor cursor = node.openLogs(from, to, offset);
+					ArrayList<ComputationRequestInfo> logs;
+					while(limit>0 && !(logs = node.getLogs(cursor, Math.min(limit, LOG_CHUNK))).isEmpty()){
+						for(ComputationRequestInfo c : logs){
+							outputStream.writeObject(c);
+						}
+						outputStream.reset();
+						limit = limit - logs.size();
+					}
+					outputStream.close();
+					break;
+				}
+				else if(splittedExp[0].startsWith("!share")){
+					int resourceLevelForEachNode = Integer.valueOf(splittedExp[1]);
+					if(nodeRmin>resourceLevelForEachNode){
+						response = "!nok";
+					}
+					else{
+						response = "!ok";
+						node.setNewResourceLevel(resourceLevelForEachNode);
+					}
+					channel.write(response.getBytes());
+				}
+				else if(splittedExp[0].startsWith("!commit")){
+					int resources = Integer.valueOf(splittedExp[1]);
+					node.commit(resources);
+				}
+				else if(splittedExp[0].startsWith("!rollback")){
+					node.rollback();
+				}
+				else if(splittedExp[1].startsWith("!computeBatch")){
+					String plaintext = "!computeBatch";
+					for(int i = 2; i<splittedExp.length; i++){
+						plaintext = plaintext +" "+ splittedExp[i];
+					}
+					if(!HMACsAreEqual(splittedExp[0],plaintext)){
+						response = "!tampered "+plaintext;
+					}
+					else{
+						response = computeBatch(splittedExp, 2);
+					}
+					channel.write(prependResponseWithHMAC(response).getBytes());
+				}
+				else if(splittedExp[1].startsWith("!compute")){
+					String plaintext = "!compute";
+					for(int i = 2; i<splittedExp.length; i++){
+						plaintext = plaintext +" "+ splittedExp[i];
+					}
+					if(!HMACsAreEqual(splittedExp[0],plaintext)){
+						response = "!tampered !compute "+splittedExp[2] + " " +splittedExp[3] + " "+splittedExp[4];
+					}
+					else{
+						response = compute(splittedExp[2], splittedExp[3], splittedExp[4]);
+					}
+					channel.write(prependResponseWithHMAC(response).getBytes());
+				}
+			}
+		}
+		catch (IOException e) {}
+		finally {
+			listener.remove(this);
+			stopRunning();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring buffer of the most recent computations of a node, from which !history is answered without reading the {@link ComputationLog}.
+ * Once the buffer is full, every new computation replaces the oldest one.
+ * <p>
+ * The buffer is lock-free: a computation takes the next sequence number and stores itself with it in the slot of that number.
+ * A slot is only replaced by a computation with a higher sequence number, and a reader skips slots whose sequence number does not match,
+ * since they are still being written or were already replaced.
+ */
+public class HistoryBuffer {
+
+	private AtomicReferenceArray<Slot> slots;
+	private AtomicLong sequence = new AtomicLong();
+
+	public HistoryBuffer(int capacity) {
+		this.slots = new AtomicReferenceArray<Slot>(Math.max(capacity, 1));
+	}
+
+	/**
+	 * Adds a computation, replacing the oldest one if the buffer is full.
+	 * @param entry
+	 */
+	public void add(ComputationLog.Entry entry){
+		Slot slot = new Slot(sequence.getAndIncrement(), entry);
+		int index = (int) (slot.sequence % slots.length());
+		while(true){
+			Slot current = slots.get(index);
+			if(current != null && current.sequence > slot.sequence){
+				//a later computation was faster
+				return;
+			}
+			if(slots.compareAndSet(index, current, slot)){
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the buffer is full, so older computations might only be found in the log
+	 */
+	public boolean isFull(){
+		return sequence.get() >= slots.length();
+	}
+
+	/**
+	 * @param n
+	 * @return the most recent n computations, or all of them if the buffer holds less, oldest first
+	 */
+	public List<ComputationLog.Entry> last(int n){
+		long end = sequence.get();
+		int count = (int) Math.max(0, Math.min(n, Math.min(end, slots.length())));
+		List<ComputationLog.Entry> last = new ArrayList<ComputationLog.Entry>(count);
+		for(long i = end-count; i<end; i++){
+			Slot slot = slots.get((int) (i % slots.length()));
+			if(slot != null && slot.sequence == i){
+				last.add(slot.entry);
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * A computation and its sequence number.
+	 */
+	private static class Slot {
+
+		private final long sequence;
+		private final ComputationLog.Entry entry;
+
+		public Slot(long sequence, ComputationLog.Entry entry) {
+			this.sequence = sequence;
+			this.entry = entry;
+		}
+	}
+}
@@ -1,175 +1,107 @@
 package node;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.ObjectOutputStream;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
-import java.security.InvalidKeyException;
+import java.nio.channels.ServerSocketChannel;
 import java.security.Key;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-
-import javax.crypto.Mac;
-
-import model.ComputationRequestInfo;
-
-import org.bouncycastle.util.encoders.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
+import channel.BufferPool;
 import util.Keys;
 
 /**
- * Listens for requests. In case of !compute request, if the calculation is successful, the resulting number is sent back to the cloud controller. 
- * Otherwise, the cloud controller is informed about the reason of the failure. Each time, a log file is created. See the {@link #run() run} method for more details.
+ * Listens for connections from the cloud controller and other nodes. Every accepted connection is served by a
+ * {@link ConnectionHandler} on the given executor (listener.pool.size worker threads or virtual threads), which answers requests until the communication partner closes the connection.
+ * At most maxConnections connections are served at the same time. The connections are accepted as socket channels, so framed connections can be served from the buffers of a {@link BufferPool}. See the {@link #run() run} method for more details.
  */
 public class Listener implements Runnable {
 
+	private static final int BUFFER_SIZE = 4096;
+
 	private boolean running = true;
-	private ServerSocket serverSocket;
+	private ServerSocketChannel serverSocketChannel;
 	private int tcpPort;
 	private Node node;
 	private int nodeRmin;
-	private PrintWriter out;
-	private BufferedReader in;
-	private Mac hMac;
+	private Key secretKey;
+	private Set<ConnectionHandler> connectionHandlers;
+	private Semaphore connectionPermits;
+	private ExecutorService executor;
+	private BufferPool bufferPool;
 
-	public Listener(int tcpPort, Node node, int nodeRmin,String hmacKey){
+	public Listener(int tcpPort, Node node, int nodeRmin,String hmacKey, ExecutorService executor, int maxConnections){
 		this.node = node;
 		this.tcpPort = tcpPort;
 		this.nodeRmin = nodeRmin;
+		this.connectionHandlers = ConcurrentHashMap.newKeySet();
+		this.connectionPermits = new Semaphore(maxConnections);
+		this.executor = executor;
+		this.bufferPool = new BufferPool(BUFFER_SIZE, maxConnections);
 		try {
-			Key secretKey = Keys.readSecretKey(new File(hmacKey));
-			hMac = Mac.getInstance("HmacSHA256");
-			hMac.init(secretKey);
-		} catch (NoSuchAlgorithmException e) {
-			System.err.println("Algorithm HmacSHA256 not found.");
-		} catch (InvalidKeyException e) {
-			System.err.println("Invalid Key: please check the length and encoding of the key.");
+			secretKey = Keys.getSecretKey(new File(hmacKey));
 		} catch (IOException e) {
 			System.err.println("IOException: maybe the file does not exist.");
 		}
 	}
 
 	/**
-	 * Stops listening for computation requests.
+	 * Stops listening for requests and closes all open connections.
 	 */
 	public void stopRunning(){
 		running = false;
 		try {
-			if(serverSocket != null) serverSocket.close();
-		} 
+			if(serverSocketChannel != null) serverSocketChannel.close();
+		}
 		catch (IOException e) {}
+		for(ConnectionHandler connectionHandler : connectionHandlers){
+			connectionHandler.stopRunning();
+		}
+		executor.shutdown();
 	}
-	
-	/**
-	 * Checks whether the HMAC of the received plaintext is equal to the HMAC that was sent by the communication partner
-	 * @param receivedHMAC
-	 * @param receivedPlainText
-	 * @return true, if the HMACs are equal
-	 */
-	private boolean HMACsAreEqual(String receivedHMAC, String receivedPlaintext){
-		// computedHash is the HMAC of the received plaintext 
-		hMac.update(receivedPlaintext.getBytes());
-		byte[] computedHash = hMac.doFinal();
-		// receivedHash is the HMAC that was sent by the communication partner
-		byte[] receivedHash = Base64.decode(receivedHMAC.getBytes());
-		return MessageDigest.isEqual(computedHash, receivedHash);
-	}
-	
+
 	/**
-	 * Prepends a given message with a new HMAC
-	 * @param message
-	 * @return the message with the HMAC prepended
+	 * Removes a handler whose connection was closed, so that a new connection can be accepted.
+	 * @param connectionHandler
 	 */
-	private String prependResponseWithHMAC(String message){
-		hMac.update(message.getBytes());
-		return new String(Base64.encode(hMac.doFinal())) +" " + message;
+	public void remove(ConnectionHandler connectionHandler){
+		if(connectionHandlers.remove(connectionHandler)){
+			connectionPermits.release();
+		}
 	}
 
 	/**
-	 * Listens for requests from the cloud controller/node and performs the requested operation.
-	 * After it has completely processed a request and sent the response back to the cloud controller/node, the respective Socket is closed. 
-	 * For any new request, a new Socket is created.
+	 * Accepts connections from the cloud controller/nodes and hands each of them to a new {@link ConnectionHandler}.
+	 * A connection is kept open for any number of requests, so the cloud controller can reuse it for all its !compute requests.
+	 * If maxConnections connections are open, no further connection is accepted until one of them is closed.
 	 */
 	@Override
 	public void run() {
 		try {
-			serverSocket = new ServerSocket(tcpPort);
+			serverSocketChannel = ServerSocketChannel.open();
+			serverSocketChannel.socket().bind(new InetSocketAddress(tcpPort));
 			while(running){
-				Socket clientSocket = serverSocket.accept();
-				in = new BufferedReader( new InputStreamReader(clientSocket.getInputStream()));
-				String request = in.readLine();
-				String splittedExp[] = request.split("\\s+");
-				String response = "";
-				
-				if(splittedExp[0].startsWith("!getLogs")){
-					ObjectOutputStream outputStream = new ObjectOutputStream(clientSocket.getOutputStream());
-					outputStream.flush();
-					ArrayList<ComputationRequestInfo> logs = node.getLogs();
-					for(ComputationRequestInfo c : logs){
-						outputStream.writeObject(c);
-					}
-					outputStream.close();
-				}
-				else if(splittedExp[0].startsWith("!share")){
-					out = new PrintWriter(clientSocket.getOutputStream(), true);
-					int resourceLevelForEachNode = Integer.valueOf(splittedExp[1]);
-					if(nodeRmin>resourceLevelForEachNode){
-						response = "!nok";
-					}
-					else{
-						response = "!ok";
-						node.setNewResourceLevel(resourceLevelForEachNode);
-					}
-					out.println(response);
-				}
-				else if(splittedExp[0].startsWith("!commit")){
-					int resources = Integer.valueOf(splittedExp[1]);
-					node.commit(resources);
-				}
-				else if(splittedExp[0].startsWith("!rollback")){
-					node.rollback();
+				connectionPermits.acquire();
+				Socket clientSocket;
+				try {
+					clientSocket = serverSocketChannel.accept().socket();
 				}
-				else if(splittedExp[1].startsWith("!compute")){
-					out = new PrintWriter(clientSocket.getOutputStream(), true);
-					String plaintext = "!compute";
-					for(int i = 2; i<splittedExp.length; i++){
-						plaintext = plaintext +" "+ splittedExp[i];
-					}
-					if(!HMACsAreEqual(splittedExp[0],plaintext)){
-						response = "!tampered !compute "+splittedExp[2] + " " +splittedExp[3] + " "+splittedExp[4];
-					}
-					else{
-						if(splittedExp[3].equals("+")) response = ""+(Integer.valueOf(splittedExp[2]) + Integer.valueOf(splittedExp[4]));
-						if(splittedExp[3].equals("-")) response = ""+(Integer.valueOf(splittedExp[2]) - Integer.valueOf(splittedExp[4]));
-						if(splittedExp[3].equals("*")) response = ""+(Integer.valueOf(splittedExp[2]) * Integer.valueOf(splittedExp[4]));
-						if(splittedExp[3].equals("/")) {
-							if(Integer.valueOf(splittedExp[4]) != 0){
-								double tmp = (Double.valueOf(splittedExp[2]) / Double.valueOf(splittedExp[4]));
-								if(tmp<0){
-									response = ""+(-Math.round(-tmp));
-								}
-								else{
-									response = ""+Math.round(tmp);
-								}
-							}
-							else{
-								response = "Error: division by 0";
-							}
-						}
-						node.createLogFile(splittedExp[2] + " " +splittedExp[3] + " "+splittedExp[4], response);
-					}
-					out.println(prependResponseWithHMAC(response));
+				catch(IOException e){
+					connectionPermits.release();
+					throw e;
 				}
-				clientSocket.close();
+				ConnectionHandler connectionHandler = new ConnectionHandler(clientSocket, node, nodeRmin, secretKey, bufferPool, this);
+				connectionHandlers.add(connectionHandler);
+				executor.submit(connectionHandler);
 			}
 		}
 		catch(SocketException e){}
 		catch (IOException e) {}
+		catch (InterruptedException e) {}
 	}
 }
\ No newline at end of file
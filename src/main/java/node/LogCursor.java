@@ -0,0 +1,132 @@
+package node;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import node.ComputationLog.Entry;
+
+/**
+ * Reads the computations of a time range of the {@link ComputationLog} in chunks. Between two chunks only the number of the segment and the position
+ * of the next record in it are kept, which do not change when records are appended or older segments are deleted, so a chunk continues exactly after the previous one.
+ * If the segment of the cursor was deleted in the meantime, the cursor continues with the oldest remaining segment after it.
+ */
+public class LogCursor {
+
+	private LogSegments segments;
+	private long from;
+	private long to;
+	private int skip;
+	private long segmentNumber = Long.MIN_VALUE;
+	private long position = -1;
+	private boolean finished;
+
+	LogCursor(LogSegments segments, long from, long to, int offset) {
+		this.segments = segments;
+		this.from = from;
+		this.to = to;
+		this.skip = offset;
+	}
+
+	/**
+	 * @param max
+	 * @return the next at most max computations, oldest first, an empty list at the end of the range
+	 * @throws IOException
+	 */
+	public List<Entry> next(int max) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		while(!finished && entries.size()<max){
+			Map.Entry<Long, SegmentIndex> segmentEntry = segments.ceiling(segmentNumber);
+			if(segmentEntry == null){
+				finished = true;
+				break;
+			}
+			if(segmentEntry.getKey() != segmentNumber){
+				segmentNumber = segmentEntry.getKey();
+				position = -1;
+			}
+			SegmentIndex index = segmentEntry.getValue().copy();
+			if(index.getCount()>0 && index.getFirst() >= to){
+				finished = true;
+				break;
+			}
+			if(position<0 && !seek(index)){
+				nextSegment();
+				continue;
+			}
+			if(position >= index.getLength()){
+				if(segmentNumber == segments.last()){
+					//the end of the log
+					finished = true;
+					break;
+				}
+				nextSegment();
+				continue;
+			}
+			SegmentReader reader;
+			try {
+				reader = new SegmentReader(segments.segmentFile(segmentNumber), position, index.getLength());
+			}
+			catch (IOException e) {
+				//the segment was deleted in the meantime
+				nextSegment();
+				continue;
+			}
+			try {
+				Entry entry;
+				while(entries.size()<max && (entry = reader.next()) != null){
+					position = reader.getPosition();
+					if(entry.getTimestamp()<from){
+						continue;
+					}
+					if(entry.getTimestamp() >= to){
+						finished = true;
+						break;
+					}
+					if(skip>0){
+						skip--;
+					}
+					else{
+						entries.add(entry);
+					}
+				}
+				if(reader.getPosition() >= index.getLength()){
+					position = index.getLength();
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		return entries;
+	}
+
+	private void nextSegment(){
+		segmentNumber++;
+		position = -1;
+	}
+
+	/**
+	 * Positions the cursor at the first block of the segment which can contain a requested computation. A segment which lies completely
+	 * within the range and only contains skipped computations is skipped as a whole.
+	 * @return false if the segment does not contain any requested computation
+	 */
+	private boolean seek(SegmentIndex index){
+		if(index.getCount() == 0 || index.getLast()<from){
+			return false;
+		}
+		if(skip>0 && index.getFirst() >= from && index.getLast()<to){
+			if(skip >= index.getCount()){
+				skip = skip-index.getCount();
+				return false;
+			}
+			int block = skip/SegmentIndex.INTERVAL;
+			skip = skip-block*SegmentIndex.INTERVAL;
+			position = index.getOffset(block);
+			return true;
+		}
+		position = index.getOffset(index.findBlock(from));
+		return true;
+	}
+}
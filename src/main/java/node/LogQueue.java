@@ -0,0 +1,257 @@
+package node;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import node.ComputationLog.Entry;
+
+/**
+ * The queue between the appending threads and the writer of the {@link ComputationLog}. It is lock-free and holds at most log.queueCapacity records.
+ * If it is full, log.overflow decides what happens:
+ * <ul>
+ * <li>block: the computation waits until the writer made room</li>
+ * <li>dropOldest: the oldest queued record is discarded</li>
+ * <li>spill: the record and all following ones are appended to spill.log, until the writer moved them into the segment</li>
+ * </ul>
+ */
+public class LogQueue {
+
+	private static final String SPILL_FILE = "spill.log";
+
+	private File dir;
+	private String overflow;
+	private int capacity;
+	private boolean forceSpill;
+	private ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+	private AtomicInteger depth = new AtomicInteger();
+	private AtomicLong dropped = new AtomicLong();
+	private AtomicLong spilled = new AtomicLong();
+	private volatile boolean spilling;
+	private volatile boolean closed;
+	private FileChannel spill;
+	private Object spillLock = new Object();
+	private Object space = new Object();
+
+	/**
+	 * @param dir the directory of spill.log
+	 * @param overflow the overflow policy
+	 * @param capacity the maximum number of queued records
+	 * @param forceSpill true if every spilled record is forced to the disk
+	 */
+	public LogQueue(File dir, String overflow, int capacity, boolean forceSpill) {
+		this.dir = dir;
+		this.overflow = overflow;
+		this.capacity = capacity;
+		this.forceSpill = forceSpill;
+	}
+
+	/**
+	 * Queues a record, or handles it depending on log.overflow if the queue is full.
+	 * @param entry
+	 */
+	public void add(Entry entry){
+		if(spilling || !reserve()){
+			overflow(entry);
+		}
+		else{
+			queue.add(entry);
+		}
+	}
+
+	/**
+	 * @return true if no record is queued, spilled records are not counted
+	 */
+	public boolean isEmpty(){
+		return queue.isEmpty();
+	}
+
+	/**
+	 * @return true if records wait in spill.log
+	 */
+	public boolean isSpilling(){
+		return spilling;
+	}
+
+	/**
+	 * @return the number of queued records
+	 */
+	public int getDepth(){
+		return depth.get();
+	}
+
+	/**
+	 * @return the number of records which were discarded
+	 */
+	public long getDropped(){
+		return dropped.get();
+	}
+
+	/**
+	 * @return the number of records which were appended to spill.log because the queue was full
+	 */
+	public long getSpilled(){
+		return spilled.get();
+	}
+
+	/**
+	 * Discards a record.
+	 * @param entry
+	 */
+	public void drop(Entry entry){
+		dropped.incrementAndGet();
+		entry.markDone();
+	}
+
+	/**
+	 * Takes the queued records and wakes up the computations which wait for room.
+	 */
+	public void drain(List<Entry> batch){
+		Entry entry;
+		boolean drained = false;
+		while((entry = queue.poll()) != null){
+			depth.decrementAndGet();
+			batch.add(entry);
+			drained = true;
+		}
+		if(drained){
+			synchronized(space){
+				space.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Moves the spilled records into the segment, after the records which were queued before them. Until then, further records wait for the spill lock,
+	 * so the order is kept.
+	 * @param batch the queued records, to which the spilled ones are added
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void unspill(List<Entry> batch, SegmentWriter writer) throws IOException {
+		synchronized(spillLock){
+			drain(batch);
+			spill.close();
+			spill = null;
+			File spillFile = new File(dir, SPILL_FILE);
+			SegmentReader.read(spillFile, batch, null);
+			writer.write(batch);
+			spillFile.delete();
+			spilling = false;
+		}
+	}
+
+	/**
+	 * Moves the records, which were still in spill.log when the node stopped, into the segment.
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void recover(SegmentWriter writer) throws IOException {
+		File spillFile = new File(dir, SPILL_FILE);
+		if(spillFile.exists()){
+			List<Entry> entries = new ArrayList<Entry>();
+			SegmentReader.read(spillFile, entries, null);
+			if(!entries.isEmpty()){
+				writer.write(entries);
+			}
+			spillFile.delete();
+		}
+	}
+
+	/**
+	 * Called once the writer stopped, computations which wait for room drop their records.
+	 */
+	public void close(){
+		closed = true;
+		synchronized(space){
+			space.notifyAll();
+		}
+	}
+
+	/**
+	 * Takes a free place in the queue.
+	 * @return false if the queue is full
+	 */
+	private boolean reserve(){
+		while(true){
+			int current = depth.get();
+			if(current >= capacity){
+				return false;
+			}
+			if(depth.compareAndSet(current, current+1)){
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Handles a record which does not fit into the queue, depending on log.overflow.
+	 */
+	private void overflow(Entry entry){
+		if(overflow.equals(ComputationLog.SPILL)){
+			spill(entry);
+			return;
+		}
+		while(!reserve()){
+			if(closed){
+				drop(entry);
+				return;
+			}
+			if(overflow.equals(ComputationLog.DROP_OLDEST)){
+				Entry oldest = queue.poll();
+				if(oldest != null){
+					depth.decrementAndGet();
+					drop(oldest);
+				}
+				continue;
+			}
+			synchronized(space){
+				if(depth.get() >= capacity && !closed){
+					try {
+						space.wait(100);
+					}
+					catch (InterruptedException e) {
+						drop(entry);
+						return;
+					}
+				}
+			}
+		}
+		queue.add(entry);
+	}
+
+	/**
+	 * Appends a record to spill.log. Until the writer has moved the spilled records into the segment, all following records are spilled as well, so the order is kept.
+	 * If log.durability is record, spill.log is forced to the disk, since it is moved into the segment when the node is started again.
+	 */
+	private void spill(Entry entry){
+		synchronized(spillLock){
+			try {
+				if(spill == null){
+					spill = FileChannel.open(new File(dir, SPILL_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				}
+				ByteBuffer buffer = ByteBuffer.wrap(entry.encode(entry.getTimestamp()));
+				while(buffer.hasRemaining()){
+					spill.write(buffer);
+				}
+				if(forceSpill){
+					spill.force(false);
+				}
+				spilling = true;
+				spilled.incrementAndGet();
+				entry.markDone();
+			}
+			catch (IOException e) {
+				System.err.println("Could not spill the computation log: "+e.getMessage());
+				drop(entry);
+			}
+		}
+	}
+}
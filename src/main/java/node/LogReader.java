@@ -0,0 +1,104 @@
+package node;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import node.ComputationLog.Entry;
+
+/**
+ * Reads pages of the {@link ComputationLog}. Only the segments which overlap the requested time range are opened,
+ * and within a segment the reading starts at the block of the {@link SegmentIndex} which contains the first requested record.
+ */
+public class LogReader {
+
+	private LogSegments segments;
+
+	public LogReader(LogSegments segments) {
+		this.segments = segments;
+	}
+
+	/**
+	 * @param from the earliest timestamp, inclusive
+	 * @param to the latest timestamp, exclusive
+	 * @param offset the number of computations of the range which are skipped
+	 * @param limit the maximum number of returned computations
+	 * @return the computations which were written, oldest first
+	 * @throws IOException
+	 */
+	public List<Entry> query(long from, long to, int offset, int limit) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		for(Map.Entry<Long, SegmentIndex> segmentEntry : segments.all()){
+			SegmentIndex index = segmentEntry.getValue().copy();
+			if(entries.size() >= limit || (index.getCount()>0 && index.getFirst() >= to)){
+				break;
+			}
+			if(index.getCount() == 0 || index.getLast()<from){
+				continue;
+			}
+			File file = segments.segmentFile(segmentEntry.getKey());
+			int block = index.findBlock(from);
+			SegmentReader reader;
+			try {
+				reader = new SegmentReader(file, index.getOffset(block), index.getLength());
+			}
+			catch (IOException e) {
+				//the segment was deleted in the meantime
+				continue;
+			}
+			try {
+				int number = block*SegmentIndex.INTERVAL;
+				Entry entry = reader.next();
+				while(entry != null && entry.getTimestamp()<from){
+					entry = reader.next();
+					number++;
+				}
+				if(entry == null){
+					continue;
+				}
+				if(index.getLast()<to){
+					int matching = index.getCount()-number;
+					if(offset >= matching){
+						offset = offset-matching;
+						continue;
+					}
+					if(offset >= SegmentIndex.INTERVAL){
+						int target = number+offset;
+						reader.close();
+						reader = new SegmentReader(file, index.getOffset(target/SegmentIndex.INTERVAL), index.getLength());
+						for(int i = 0; i<target%SegmentIndex.INTERVAL; i++){
+							reader.next();
+						}
+						entry = reader.next();
+						offset = 0;
+					}
+				}
+				while(entry != null && entry.getTimestamp()<to && entries.size()<limit){
+					if(offset>0){
+						offset--;
+					}
+					else{
+						entries.add(entry);
+					}
+					entry = reader.next();
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * @param from the earliest timestamp, inclusive
+	 * @param to the latest timestamp, exclusive
+	 * @param offset the number of computations of the range which are skipped
+	 * @return a cursor, positioned before the first requested computation
+	 */
+	public LogCursor cursor(long from, long to, int offset){
+		return new LogCursor(segments, from, to, offset);
+	}
+}
@@ -0,0 +1,120 @@
+package node;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The segment files segment-n.log of a {@link ComputationLog} in log.dir and their {@link SegmentIndex indices}, which are shared by the {@link SegmentWriter}
+ * and the readers. A segment is registered with its index, and unregistered before its files are deleted, so a reader only opens segments which exist
+ * or were deleted in the meantime.
+ */
+public class LogSegments {
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String INDEX_SUFFIX = ".idx";
+
+	private File dir;
+	private ConcurrentSkipListMap<Long, SegmentIndex> indices = new ConcurrentSkipListMap<Long, SegmentIndex>();
+
+	public LogSegments(File dir) {
+		this.dir = dir;
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	public File segmentFile(long number){
+		return new File(dir, SEGMENT_PREFIX+number+SEGMENT_SUFFIX);
+	}
+
+	public File indexFile(long number){
+		return new File(dir, SEGMENT_PREFIX+number+INDEX_SUFFIX);
+	}
+
+	/**
+	 * @return the numbers of the segment files in log.dir in ascending order
+	 */
+	public List<Long> listFiles(){
+		List<Long> numbers = new ArrayList<Long>();
+		String[] names = dir.list();
+		if(names == null){
+			return numbers;
+		}
+		for(String name : names){
+			if(name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)){
+				try {
+					numbers.add(Long.valueOf(name.substring(SEGMENT_PREFIX.length(), name.length()-SEGMENT_SUFFIX.length())));
+				}
+				catch (NumberFormatException e) {}
+			}
+		}
+		Collections.sort(numbers);
+		return numbers;
+	}
+
+	/**
+	 * Registers a segment.
+	 * @param number
+	 * @param index the index of the segment, which is updated while the segment is written
+	 */
+	public void put(long number, SegmentIndex index){
+		indices.put(number, index);
+	}
+
+	/**
+	 * @param number
+	 * @return the index of the segment, or null if it is not registered
+	 */
+	public SegmentIndex get(long number){
+		return indices.get(number);
+	}
+
+	/**
+	 * Unregisters a segment and deletes its files.
+	 * @param number
+	 */
+	public void delete(long number){
+		indices.remove(number);
+		segmentFile(number).delete();
+		indexFile(number).delete();
+	}
+
+	/**
+	 * @return the registered segments and their indices in ascending order
+	 */
+	public Iterable<Map.Entry<Long, SegmentIndex>> all(){
+		return indices.entrySet();
+	}
+
+	/**
+	 * @param number
+	 * @return the registered segment with the lowest number not less than the given one, or null
+	 */
+	public Map.Entry<Long, SegmentIndex> ceiling(long number){
+		return indices.ceilingEntry(number);
+	}
+
+	/**
+	 * @return the number of the newest registered segment
+	 */
+	public long last(){
+		return indices.lastKey();
+	}
+
+	/**
+	 * @return the number of records in all registered segments
+	 */
+	public long count(){
+		long count = 0;
+		for(SegmentIndex index : indices.values()){
+			count = count + index.getCount();
+		}
+		return count;
+	}
+}
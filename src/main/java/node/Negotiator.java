@@ -5,9 +5,11 @@ import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 import controller.CloudController;
 
@@ -27,13 +29,14 @@ public class Negotiator {
 	private boolean allNodesAgreed = true;
 	private ExecutorService executor;
 
-	public Negotiator(Node node, AlivePacketSender aps, DatagramSocket socket, String controllerHost, int controllerUdpPort, int nodeRmin){
+	public Negotiator(Node node, AlivePacketSender aps, DatagramSocket socket, String controllerHost, int controllerUdpPort, int nodeRmin, ExecutorService executor){
 		this.node = node;
 		this.aps = aps;
 		this.socket = socket;
 		this.controllerHost = controllerHost;
 		this.controllerUdpPort = controllerUdpPort;
 		this.nodeRmin = nodeRmin;
+		this.executor = executor;
 	}
 
 	/**
@@ -108,20 +111,23 @@ public class Negotiator {
 
 	/**
 	 * Sends a message to another node using the {@link MessageSenderForTwoPhaseCommit} runnable object.
+	 * The messages are sent concurrently on the node's executor, this method returns as soon as all of them were sent.
 	 * @param nrOfOnlineNodes 
 	 * @param parts the connection information (host:port)
 	 * @param message !share, !commit or !rollback message
 	 */
 	private void sendTcpMessageToNodes(int nrOfOnlineNodes, String[] parts, String message){
-		executor = Executors.newCachedThreadPool();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
 		for(int i=1; i<=nrOfOnlineNodes; i++){
 			String[] splitted = parts[i].split(":");
-			executor.submit(new MessageSenderForTwoPhaseCommit(Integer.valueOf(splitted[1]), splitted[0], message, this));
+			futures.add(executor.submit(new MessageSenderForTwoPhaseCommit(Integer.valueOf(splitted[1]), splitted[0], message, this)));
+		}
+		for(Future<?> future : futures){
+			try {
+				future.get();
+			}
+			catch (InterruptedException e) {}
+			catch (ExecutionException e) {}
 		}
-		executor.shutdown();
-		try {
-			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-		} 
-		catch (InterruptedException e) {}
 	}
 }
\ No newline at end of file
@@ -1,22 +1,15 @@
 package node;
 
 import util.Config;
+import util.ExecutorFactory;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import model.ComputationRequestInfo;
 import cli.Command;
@@ -28,23 +21,30 @@ public class Node implements INodeCli, Runnable {
 	private Config config;
 	private int nodeAlive;
 	private String logDir;
+	private String logDurability;
+	private long logSegmentSize;
+	private int logMaxSegments;
+	private int logQueueCapacity;
+	private String logOverflow;
+	private int historySize;
 	private String nodeOperators;
 	private int tcpPort;
 	private String controllerHost;
 	private int controllerUdpPort;
 	private String hmacKey;
 	private int nodeRmin;
+	private int listenerPoolSize;
+	private int listenerMaxConnections;
 	private int resourceLevel;
 	private int newResourceLevel;
 	private Shell shell;
 	private AlivePacketSender alivePacketSender;
 	private Listener listener;
+	private ComputationLog computationLog;
+	private HistoryBuffer history;
+	private ExecutorFactory executorFactory;
 	private ExecutorService executor;
-	private final static ThreadLocal<SimpleDateFormat> threadLocal = new ThreadLocal<SimpleDateFormat>() {
-		protected SimpleDateFormat initialValue() {
-			return new SimpleDateFormat("yyyyMMdd_HHmmss.SSS");
-		};
-	};
+	private ExecutorService taskExecutor;
 
 	/**
 	 * @param componentName
@@ -60,7 +60,9 @@ public class Node implements INodeCli, Runnable {
 		this.componentName = componentName;
 		this.config = config;
 		this.shell = new Shell(componentName, userRequestStream, userResponseStream);
-		executor = Executors.newCachedThreadPool();
+		executorFactory = new ExecutorFactory(config);
+		executor = executorFactory.newServiceExecutor();
+		taskExecutor = executorFactory.newExecutor();
 	}
 
 	/**
@@ -69,12 +71,20 @@ public class Node implements INodeCli, Runnable {
 	private void readNodeProperties(){
 		nodeAlive = config.getInt("node.alive");
 		logDir = config.getString("log.dir");
+		logDurability = config.getString("log.durability");
+		logSegmentSize = config.getInt("log.segmentSize");
+		logMaxSegments = config.getInt("log.maxSegments");
+		logQueueCapacity = config.getInt("log.queueCapacity");
+		logOverflow = config.getString("log.overflow");
+		historySize = config.getInt("history.size");
 		nodeOperators = config.getString("node.operators");
 		tcpPort = config.getInt("tcp.port");
 		controllerHost = config.getString("controller.host");
 		controllerUdpPort = config.getInt("controller.udp.port");
 		hmacKey = config.getString("hmac.key");
 		nodeRmin = config.getInt("node.rmin");
+		listenerPoolSize = config.getInt("listener.pool.size");
+		listenerMaxConnections = config.getInt("listener.max.connections");
 		resourceLevel = 0;
 		newResourceLevel = 0;
 	}
@@ -91,7 +101,7 @@ public class Node implements INodeCli, Runnable {
 	 * Tells the cloud controller if this node is still alive. See {@link AlivePacketSender} for more details.
 	 */
 	private void startAlivePacketSender(){
-		alivePacketSender = new AlivePacketSender(tcpPort, controllerHost, controllerUdpPort, nodeAlive, nodeOperators,this,nodeRmin);
+		alivePacketSender = new AlivePacketSender(tcpPort, controllerHost, controllerUdpPort, nodeAlive, nodeOperators,this,nodeRmin,taskExecutor);
 		executor.submit(alivePacketSender);
 	}
 
@@ -99,39 +109,51 @@ public class Node implements INodeCli, Runnable {
 	 * Listens for requests from the cloud controller and other nodes. See {@link Listener} for more details.
 	 */
 	private void startListener(){
-		listener = new Listener(tcpPort,this,nodeRmin,hmacKey);
+		listener = new Listener(tcpPort,this,nodeRmin,hmacKey,executorFactory.newExecutor(listenerPoolSize),listenerMaxConnections);
 		executor.submit(listener);
 	}
 
 	/**
-	 * Creates a log file containing the request and the result of an operation
+	 * Opens the log of the computations and starts its writer. See {@link ComputationLog} for more details.
+	 * The {@link HistoryBuffer} is filled with the most recent computations of the log.
+	 */
+	private void startComputationLog(){
+		history = new HistoryBuffer(historySize);
+		computationLog = new ComputationLog(logDir, logDurability, logSegmentSize, logMaxSegments, logQueueCapacity, logOverflow);
+		try {
+			computationLog.open();
+			executor.submit(computationLog);
+			for(ComputationLog.Entry entry : computationLog.readLast(historySize)){
+				history.add(entry);
+			}
+		}
+		catch (IOException e) {
+			System.err.println("Could not open the computation log in "+logDir+", computations are not logged: "+e.getMessage());
+			computationLog = null;
+		}
+	}
+
+	/**
+	 * Logs the request and the result of an operation
 	 * @param request
 	 * 		The computation request.
 	 * @param result
 	 * 		The result of the computation request.
 	 */
 	public void createLogFile(String request, String result){
-		BufferedWriter writer = null;
-		SimpleDateFormat sdf = threadLocal.get();
-		File file = new File(logDir+"/"+sdf.format(new Date())+"_"+componentName+".log");
-		file.getParentFile().mkdirs();
-		try {
-			writer = new BufferedWriter(new PrintWriter(file));
-			writer.write(request);
-			writer.newLine();
-			writer.write(result);
-			writer.close();
-		} 
-		catch (FileNotFoundException e) {} 
-		catch (UnsupportedEncodingException e) {} 
-		catch (IOException e) {}
+		if(computationLog != null){
+			history.add(computationLog.append(request, result));
+		}
+		else{
+			history.add(new ComputationLog.Entry(System.currentTimeMillis(), request, result));
+		}
 	}
 
 	/**
 	 * Sets a new temporary resource level, which will possibly be the true resource level in case of a successful Two-Phase commit.
 	 * @param resourceLevel the new resource level
 	 */
-	public void setNewResourceLevel(int resourceLevel) {
+	public synchronized void setNewResourceLevel(int resourceLevel) {
 		this.newResourceLevel = resourceLevel;
 	}
 
@@ -139,7 +161,7 @@ public class Node implements INodeCli, Runnable {
 	 * Sets the new resource level for this node(the Two-Phase commit was successful).
 	 * @param resourceLevel the new resource level
 	 */
-	public void commit(int resourceLevel){
+	public synchronized void commit(int resourceLevel){
 		if(resourceLevel == newResourceLevel){
 			this.resourceLevel = resourceLevel;
 		}
@@ -151,29 +173,40 @@ public class Node implements INodeCli, Runnable {
 	/**
 	 * Sets the temporary resource level back to the old resource level.
 	 */
-	public void rollback(){
+	public synchronized void rollback(){
 		this.newResourceLevel = resourceLevel;
 	}
 
 	/**
-	 * @return all the log files of this node as a list of DTOs
+	 * @param from the earliest timestamp in ms since the epoch, inclusive
+	 * @param to the latest timestamp in ms since the epoch, exclusive
+	 * @param offset the number of log entries of the time range which are skipped
+	 * @return a cursor on the log entries of the time range, or null if the computation log is not available
+	 */
+	public LogCursor openLogs(long from, long to, int offset){
+		if(computationLog == null){
+			return null;
+		}
+		return computationLog.cursor(from, to, offset);
+	}
+
+	/**
+	 * @param cursor the cursor returned by {@link #openLogs(long, long, int) openLogs}
+	 * @param limit the maximum number of log entries
+	 * @return the next log entries of the cursor as a list of DTOs, oldest first, an empty list at its end
 	 * @throws IOException
 	 */
-	public ArrayList<ComputationRequestInfo> getLogs() throws IOException{
+	public ArrayList<ComputationRequestInfo> getLogs(LogCursor cursor, int limit) throws IOException{
+		if(cursor == null){
+			return new ArrayList<ComputationRequestInfo>();
+		}
+		return toRequestInfos(cursor.next(limit));
+	}
+
+	private ArrayList<ComputationRequestInfo> toRequestInfos(List<ComputationLog.Entry> entries){
 		ArrayList<ComputationRequestInfo> logs = new ArrayList<ComputationRequestInfo>();
-		BufferedReader br = null;
-		File folder = new File(logDir);
-		if(folder.exists()){
-			File[] files = folder.listFiles();
-			for (int i = 0; i<files.length; i++){
-				br = new BufferedReader(new FileReader(logDir+"/"+files[i].getName()));
-				String request = br.readLine();
-				String response = br.readLine();
-				logs.add(new ComputationRequestInfo(files[i].getName(),componentName,request,response));
-			}
-			if(br != null){
-				br.close();
-			}
+		for(ComputationLog.Entry entry : entries){
+			logs.add(new ComputationRequestInfo(entry.getTimestamp(),componentName,entry.getRequest(),entry.getResult()));
 		}
 		return logs;
 	}
@@ -184,6 +217,7 @@ public class Node implements INodeCli, Runnable {
 	@Override
 	public void run() {
 		readNodeProperties();
+		startComputationLog();
 		startShell();
 		startAlivePacketSender();
 		startListener();
@@ -195,7 +229,9 @@ public class Node implements INodeCli, Runnable {
 		shell.close();
 		alivePacketSender.stopRunning();
 		listener.stopRunning();
+		if(computationLog != null) computationLog.close();
 		executor.shutdown();
+		taskExecutor.shutdown();
 		return "Shuting down "+ componentName+" now.";
 	}
 
@@ -212,23 +248,50 @@ public class Node implements INodeCli, Runnable {
 	@Command(value="history")
 	@Override
 	public String history(int numberOfRequests) throws IOException {
-		String history = "";
-		BufferedReader br = null;
-		File folder = new File(logDir);
-		File[] files = folder.listFiles();
-		for (int i = 0; i<files.length; i++){
-			if(i<numberOfRequests){
-				br = new BufferedReader(new FileReader(logDir+"/"+files[i].getName()));
-				history = history + br.readLine() + " = " + br.readLine() + "\n";
-			}
-		}
-		if(br != null){
-			br.close();
+		List<ComputationLog.Entry> entries = history.last(numberOfRequests);
+		if(entries.size()<numberOfRequests && history.isFull() && computationLog != null){
+			//older computations than the ones of the ring buffer are only in the log
+			entries = computationLog.readLast(numberOfRequests);
 		}
-		if(history.length()==0){
+		if(entries.isEmpty()){
 			return "There aren't any evaluated expressions";
 		}
-		return history.trim();
+		StringBuilder builder = new StringBuilder();
+		for(ComputationLog.Entry entry : entries){
+			builder.append(entry.getRequest()).append(" = ").append(entry.getResult()).append('\n');
+		}
+		return builder.toString().trim();
+	}
+
+	/**
+	 * Writes the logged computations in the old format, one file per computation, into the given directory.
+	 * @param dir the target directory
+	 * @return the number of exported computations
+	 * @throws IOException
+	 */
+	@Command(value="exportLogs")
+	public String exportLogs(String dir) throws IOException {
+		if(computationLog == null){
+			return "The computation log is not available.";
+		}
+		return "Exported "+computationLog.export(new File(dir), componentName)+" computations to "+dir+".";
+	}
+
+	/**
+	 * @return the number of computations waiting for the writer of the computation log and the number of dropped and spilled computations,
+	 * 		and the failure of the writer, if it stopped
+	 * @throws IOException
+	 */
+	@Command(value="logStatus")
+	public String logStatus() throws IOException {
+		if(computationLog == null){
+			return "The computation log is not available.";
+		}
+		String status = "Queued: "+computationLog.getQueueDepth()+" Dropped: "+computationLog.getDropped()+" Spilled: "+computationLog.getSpilled();
+		if(computationLog.getFailure() != null){
+			status = status+"\nThe computation log stopped: "+computationLog.getFailure();
+		}
+		return status;
 	}
 
 	@Command(value="resources")
@@ -0,0 +1,194 @@
+package node;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sparse timestamp index of a segment of the {@link ComputationLog}.
+ * It keeps the timestamp and the file offset of every {@value #INTERVAL}th record, so a query has to read at most {@value #INTERVAL} records
+ * to find the first record of a time range or a page. The records of a segment are ordered by their timestamps.
+ * <p>
+ * The index of the segment which is currently written is kept in memory and rebuilt from the segment on startup.
+ * Once a segment is complete, its index is stored next to it as segment-n.idx.
+ */
+public class SegmentIndex {
+
+	public static final int INTERVAL = 64;
+
+	private static final int MAGIC = 0x53494458;
+
+	private int count;
+	private long first;
+	private long last;
+	private long length;
+	private int blocks;
+	private long[] timestamps;
+	private long[] offsets;
+
+	public SegmentIndex() {
+		this.timestamps = new long[16];
+		this.offsets = new long[16];
+	}
+
+	/**
+	 * Adds a record, which was appended to the segment.
+	 * @param timestamp the timestamp of the record, not less than the one of the previous record
+	 * @param offset the position of the record in the segment
+	 * @param recordLength the length of the encoded record
+	 */
+	public synchronized void add(long timestamp, long offset, int recordLength){
+		if(count % INTERVAL == 0){
+			if(blocks == timestamps.length){
+				timestamps = Arrays.copyOf(timestamps, blocks*2);
+				offsets = Arrays.copyOf(offsets, blocks*2);
+			}
+			timestamps[blocks] = timestamp;
+			offsets[blocks] = offset;
+			blocks++;
+		}
+		if(count == 0){
+			first = timestamp;
+		}
+		last = timestamp;
+		length = offset+recordLength;
+		count++;
+	}
+
+	/**
+	 * @return a copy, which is not changed by further records
+	 */
+	public synchronized SegmentIndex copy(){
+		SegmentIndex copy = new SegmentIndex();
+		copy.count = count;
+		copy.first = first;
+		copy.last = last;
+		copy.length = length;
+		copy.blocks = blocks;
+		copy.timestamps = Arrays.copyOf(timestamps, Math.max(blocks, 1));
+		copy.offsets = Arrays.copyOf(offsets, Math.max(blocks, 1));
+		return copy;
+	}
+
+	public synchronized int getCount() {
+		return count;
+	}
+
+	public synchronized long getFirst() {
+		return first;
+	}
+
+	public synchronized long getLast() {
+		return last;
+	}
+
+	/**
+	 * @return the number of bytes of the segment which are covered by the index
+	 */
+	public synchronized long getLength() {
+		return length;
+	}
+
+	/**
+	 * @param timestamp
+	 * @return the last block, whose first record is older than the timestamp, or 0
+	 */
+	public synchronized int findBlock(long timestamp){
+		int low = 0;
+		int high = blocks-1;
+		int found = 0;
+		while(low <= high){
+			int middle = (low+high) >>> 1;
+			if(timestamps[middle]<timestamp){
+				found = middle;
+				low = middle+1;
+			}
+			else{
+				high = middle-1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @param block
+	 * @return the position of the first record of the block in the segment
+	 */
+	public synchronized long getOffset(int block){
+		return offsets[block];
+	}
+
+	/**
+	 * Writes the index into the given file.
+	 * @param file
+	 * @throws IOException
+	 */
+	public synchronized void store(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(count);
+			out.writeLong(first);
+			out.writeLong(last);
+			out.writeLong(length);
+			out.writeInt(blocks);
+			for(int i = 0; i<blocks; i++){
+				out.writeLong(timestamps[i]);
+				out.writeLong(offsets[i]);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads an index, which was written by {@link #store(File) store}.
+	 * @param file
+	 * @param segmentLength the length of the segment, which the index has to cover
+	 * @return the index, or null if there is no valid index for the segment
+	 */
+	public static SegmentIndex load(File file, long segmentLength){
+		if(!file.exists()){
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if(in.readInt() != MAGIC){
+				return null;
+			}
+			SegmentIndex index = new SegmentIndex();
+			index.count = in.readInt();
+			index.first = in.readLong();
+			index.last = in.readLong();
+			index.length = in.readLong();
+			index.blocks = in.readInt();
+			if(index.length != segmentLength || index.blocks<0 || index.blocks != (index.count+INTERVAL-1)/INTERVAL){
+				return null;
+			}
+			index.timestamps = new long[Math.max(index.blocks, 1)];
+			index.offsets = new long[Math.max(index.blocks, 1)];
+			for(int i = 0; i<index.blocks; i++){
+				index.timestamps[i] = in.readLong();
+				index.offsets[i] = in.readLong();
+			}
+			return index;
+		}
+		catch (IOException e) {
+			return null;
+		}
+		finally {
+			try {
+				if(in != null) in.close();
+			}
+			catch (IOException e) {}
+		}
+	}
+}
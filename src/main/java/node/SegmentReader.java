@@ -0,0 +1,134 @@
+package node;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import node.ComputationLog.Entry;
+
+/**
+ * Reads the records of a segment (or of spill.log) of the {@link ComputationLog} from a position up to the end of the indexed part.
+ * A record is encoded as length, payload (see {@link Entry}) and CRC32 of the payload. Reading stops at the first incomplete or corrupt record.
+ */
+public class SegmentReader {
+
+	private DataInputStream in;
+	private long position;
+	private long end;
+
+	/**
+	 * @param file the segment
+	 * @param position the position of the first record which is read
+	 * @param end the length of the indexed part of the segment
+	 * @throws IOException if the segment does not exist (any more)
+	 */
+	public SegmentReader(File file, long position, long end) throws IOException {
+		FileInputStream fileIn = new FileInputStream(file);
+		fileIn.getChannel().position(position);
+		this.in = new DataInputStream(new BufferedInputStream(fileIn));
+		this.position = position;
+		this.end = end;
+	}
+
+	/**
+	 * @return the next record, or null at the end
+	 */
+	public Entry next() throws IOException {
+		if(position >= end){
+			return null;
+		}
+		byte[] payload;
+		try {
+			payload = readRecord(in);
+		}
+		catch (EOFException e) {
+			return null;
+		}
+		Entry entry = payload == null ? null : Entry.decode(payload);
+		if(entry == null){
+			position = end;
+			return null;
+		}
+		position = position + 4 + payload.length + 4;
+		return entry;
+	}
+
+	/**
+	 * @return the position of the next record in the segment
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Reads all records of a file, until its end or the first incomplete or corrupt record.
+	 * @param entries the list to which the records are added, or null
+	 * @param index the index to which the records are added, or null
+	 * @return the length of the valid part of the file
+	 */
+	public static long read(File file, List<Entry> entries, SegmentIndex index) throws IOException {
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		}
+		catch (IOException e) {
+			//the segment was deleted in the meantime
+			return 0;
+		}
+		long validLength = 0;
+		try {
+			while(true){
+				byte[] payload = readRecord(in);
+				if(payload == null){
+					return validLength;
+				}
+				Entry entry = Entry.decode(payload);
+				if(entry == null){
+					return validLength;
+				}
+				if(entries != null){
+					entries.add(entry);
+				}
+				if(index != null){
+					index.add(entry.getTimestamp(), validLength, 4 + payload.length + 4);
+				}
+				validLength = validLength + 4 + payload.length + 4;
+			}
+		}
+		catch (EOFException e) {
+			return validLength;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the payload of the next record, or null if the record is corrupt
+	 * @throws EOFException if the record is incomplete
+	 */
+	private static byte[] readRecord(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length<Entry.MIN_LENGTH || length>ComputationLog.MAX_RECORD_LENGTH){
+			return null;
+		}
+		byte[] payload = new byte[length];
+		in.readFully(payload);
+		int checksum = in.readInt();
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		if((int) crc.getValue() != checksum){
+			return null;
+		}
+		return payload;
+	}
+}
@@ -0,0 +1,144 @@
+package node;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import node.ComputationLog.Entry;
+
+/**
+ * Appends the records of the {@link ComputationLog} to the newest segment. It is only used by the writer thread of the log.
+ * A new segment is started once the current one exceeds log.segmentSize bytes, and only the newest log.maxSegments segments are kept.
+ * <p>
+ * The records are written in the order of the queue. An append, which was queued after a later one, is written with the timestamp of its predecessor,
+ * so the timestamps of a segment never decrease, which the {@link SegmentIndex} relies on.
+ */
+public class SegmentWriter {
+
+	private LogSegments segments;
+	private boolean force;
+	private long segmentSize;
+	private int maxSegments;
+	private FileChannel segment;
+	private long segmentNumber;
+	private SegmentIndex segmentIndex;
+	private long lastTimestamp;
+
+	/**
+	 * @param segments the segments of the log
+	 * @param force true if every group of records is forced to the disk
+	 * @param segmentSize the size in bytes after which a new segment is started
+	 * @param maxSegments the number of kept segments, 0 to keep all
+	 */
+	public SegmentWriter(LogSegments segments, boolean force, long segmentSize, int maxSegments) {
+		this.segments = segments;
+		this.force = force;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+	}
+
+	/**
+	 * Loads the indices of the segments, or rebuilds them if they are missing, and opens the newest segment for appending.
+	 * An incomplete record at its end, which was left by a crash, is cut off.
+	 * @throws IOException if the directory can't be written
+	 */
+	public void open() throws IOException {
+		segments.getDir().mkdirs();
+		List<Long> numbers = segments.listFiles();
+		segmentNumber = numbers.isEmpty() ? 1 : numbers.get(numbers.size()-1);
+		for(long number : numbers){
+			File file = segments.segmentFile(number);
+			SegmentIndex index = number == segmentNumber ? null : SegmentIndex.load(segments.indexFile(number), file.length());
+			if(index == null){
+				index = new SegmentIndex();
+				SegmentReader.read(file, null, index);
+				if(number != segmentNumber){
+					index.store(segments.indexFile(number));
+				}
+			}
+			segments.put(number, index);
+			if(index.getCount()>0){
+				lastTimestamp = index.getLast();
+			}
+		}
+		segmentIndex = segments.get(segmentNumber);
+		if(segmentIndex == null){
+			segmentIndex = new SegmentIndex();
+			segments.put(segmentNumber, segmentIndex);
+		}
+		segment = FileChannel.open(segments.segmentFile(segmentNumber).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		segment.truncate(segmentIndex.getLength());
+		segment.position(segmentIndex.getLength());
+	}
+
+	/**
+	 * @return the timestamp of the newest record of the log
+	 */
+	public long getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	/**
+	 * Appends the records to the current segment, forces them to the disk if required, adds them to the index and starts a new segment if necessary.
+	 */
+	public void write(List<Entry> batch) throws IOException {
+		List<byte[]> encoded = new ArrayList<byte[]>();
+		long[] timestamps = new long[batch.size()];
+		int size = 0;
+		for(int i = 0; i<batch.size(); i++){
+			lastTimestamp = Math.max(batch.get(i).getTimestamp(), lastTimestamp);
+			timestamps[i] = lastTimestamp;
+			byte[] bytes = batch.get(i).encode(lastTimestamp);
+			encoded.add(bytes);
+			size = size + bytes.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		for(byte[] bytes : encoded){
+			buffer.put(bytes);
+		}
+		buffer.flip();
+		long offset = segment.position();
+		while(buffer.hasRemaining()){
+			segment.write(buffer);
+		}
+		if(force){
+			segment.force(false);
+		}
+		for(int i = 0; i<batch.size(); i++){
+			segmentIndex.add(timestamps[i], offset, encoded.get(i).length);
+			offset = offset + encoded.get(i).length;
+		}
+		if(segment.position() >= segmentSize){
+			roll();
+		}
+	}
+
+	/**
+	 * Stores the index of the current segment, starts the next segment and deletes the oldest segments beyond log.maxSegments.
+	 */
+	private void roll() throws IOException {
+		segment.close();
+		segmentIndex.store(segments.indexFile(segmentNumber));
+		segmentNumber++;
+		segment = FileChannel.open(segments.segmentFile(segmentNumber).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		segmentIndex = new SegmentIndex();
+		segments.put(segmentNumber, segmentIndex);
+		if(maxSegments>0){
+			List<Long> numbers = segments.listFiles();
+			for(int i = 0; i<numbers.size()-maxSegments; i++){
+				segments.delete(numbers.get(i));
+			}
+		}
+	}
+
+	public void close(){
+		try {
+			if(segment != null) segment.close();
+		}
+		catch (IOException e) {}
+	}
+}
@@ -0,0 +1,182 @@
+package util;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Keeps one instance of every {@link Mac}, {@link Cipher}, {@link KeyGenerator} and {@link SecureRandom} per thread, so that the providers are
+ * only looked up once per thread and no instance is ever shared between threads.
+ * <p>
+ * An instance may only be used until the calling method returns: the next call of the same thread for the same algorithm returns the same instance.
+ * Ciphers are either initialized by the caller or, like Macs, returned initialized with the given key.
+ */
+public final class CryptoPool {
+
+	private static final ThreadLocal<Primitives> primitives = new ThreadLocal<Primitives>() {
+		@Override
+		protected Primitives initialValue() {
+			return new Primitives();
+		}
+	};
+
+	private CryptoPool() {
+	}
+
+	/**
+	 * @param algorithm
+	 *            the MAC algorithm, e.g. HmacSHA256
+	 * @param key
+	 *            the secret key
+	 * @return the Mac of the calling thread, initialized with the key and without any data
+	 * @throws NoSuchAlgorithmException
+	 * @throws InvalidKeyException
+	 */
+	public static Mac getMac(String algorithm, Key key) throws NoSuchAlgorithmException, InvalidKeyException {
+		Map<String, MacEntry> macs = primitives.get().macs;
+		MacEntry entry = macs.get(algorithm);
+		if (entry == null) {
+			entry = new MacEntry(Mac.getInstance(algorithm));
+			macs.put(algorithm, entry);
+		}
+		if (entry.key != key) {
+			entry.key = null;
+			entry.mac.init(key);
+			entry.key = key;
+		} else {
+			entry.mac.reset();
+		}
+		return entry.mac;
+	}
+
+	/**
+	 * @param transformation
+	 *            the transformation, e.g. AES/GCM/NoPadding
+	 * @return the uninitialized or previously used Cipher of the calling thread
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchPaddingException
+	 */
+	public static Cipher getCipher(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		CipherEntry entry = cipherEntry(transformation);
+		//the caller initializes the cipher with parameters which are not known here
+		entry.key = null;
+		return entry.cipher;
+	}
+
+	/**
+	 * Returns the Cipher of the calling thread, which is only initialized again if the mode, the key or the parameters differ from the last call.
+	 * This relies on every use of the cipher ending with doFinal, which resets it to the state after its initialization.
+	 * Must not be used for modes which forbid the reuse of an initialization vector, such as GCM.
+	 * @param transformation
+	 *            the transformation, e.g. AES/CTR/NoPadding
+	 * @param mode
+	 *            the operation mode, e.g. Cipher.ENCRYPT_MODE
+	 * @param key
+	 *            the secret key
+	 * @param params
+	 *            the parameters, e.g. the initialization vector
+	 * @return the Cipher of the calling thread, initialized with the mode, the key and the parameters
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchPaddingException
+	 * @throws InvalidKeyException
+	 * @throws InvalidAlgorithmParameterException
+	 */
+	public static Cipher getCipher(String transformation, int mode, Key key, AlgorithmParameterSpec params)
+			throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException {
+		CipherEntry entry = cipherEntry(transformation);
+		if (entry.key != key || entry.mode != mode || entry.params != params) {
+			entry.key = null;
+			entry.cipher.init(mode, key, params);
+			entry.mode = mode;
+			entry.params = params;
+			entry.key = key;
+		}
+		return entry.cipher;
+	}
+
+	private static CipherEntry cipherEntry(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		Map<String, CipherEntry> ciphers = primitives.get().ciphers;
+		CipherEntry entry = ciphers.get(transformation);
+		if (entry == null) {
+			entry = new CipherEntry(Cipher.getInstance(transformation));
+			ciphers.put(transformation, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * @param algorithm
+	 *            the algorithm of the keys, e.g. AES
+	 * @param keySize
+	 *            the size of the keys in bits
+	 * @return the KeyGenerator of the calling thread, initialized with the key size
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static KeyGenerator getKeyGenerator(String algorithm, int keySize) throws NoSuchAlgorithmException {
+		Map<String, KeyGenerator> generators = primitives.get().keyGenerators;
+		String name = algorithm + "/" + keySize;
+		KeyGenerator generator = generators.get(name);
+		if (generator == null) {
+			generator = KeyGenerator.getInstance(algorithm);
+			generator.init(keySize, getSecureRandom());
+			generators.put(name, generator);
+		}
+		return generator;
+	}
+
+	/**
+	 * @return the SecureRandom of the calling thread
+	 */
+	public static SecureRandom getSecureRandom() {
+		return primitives.get().secureRandom;
+	}
+
+	/**
+	 * The instances of a single thread.
+	 */
+	private static class Primitives {
+
+		private final Map<String, MacEntry> macs = new HashMap<String, MacEntry>();
+		private final Map<String, CipherEntry> ciphers = new HashMap<String, CipherEntry>();
+		private final Map<String, KeyGenerator> keyGenerators = new HashMap<String, KeyGenerator>();
+		private final SecureRandom secureRandom = new SecureRandom();
+	}
+
+	/**
+	 * A Cipher and the mode, key and parameters it was last initialized with. The key is null if the cipher was initialized by the caller.
+	 */
+	private static class CipherEntry {
+
+		private final Cipher cipher;
+		private int mode;
+		private Key key;
+		private AlgorithmParameterSpec params;
+
+		public CipherEntry(Cipher cipher) {
+			this.cipher = cipher;
+		}
+	}
+
+	/**
+	 * A Mac and the key it was last initialized with.
+	 */
+	private static class MacEntry {
+
+		private final Mac mac;
+		private Key key;
+
+		public MacEntry(Mac mac) {
+			this.mac = mac;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the thread pools of the cloud controller and the nodes, depending on the executor.mode property:
+ * <ul>
+ * <li>cached: unbounded pools of platform threads, components with their own limit get a fixed pool of that size</li>
+ * <li>bounded: fixed pools of executor.threads platform threads</li>
+ * <li>virtual: a new virtual thread for every task, so blocking socket code does not occupy platform threads.
+ * Falls back to cached if the Java runtime does not support virtual threads.</li>
+ * </ul>
+ * Long-running loops (shell, listeners, ...) always get platform threads, see {@link #newServiceExecutor() newServiceExecutor}.
+ */
+public class ExecutorFactory {
+
+	private String mode;
+	private int threads;
+
+	public ExecutorFactory(Config config) {
+		this(config.getString("executor.mode"), config.getInt("executor.threads"));
+	}
+
+	public ExecutorFactory(String mode, int threads) {
+		this.mode = mode;
+		this.threads = threads;
+		if(mode.equals("virtual") && !virtualThreadsSupported()) {
+			System.err.println("Virtual threads are not supported by this Java runtime, using cached thread pools instead.");
+			this.mode = "cached";
+		}
+	}
+
+	/**
+	 * @return an executor for the requests of a component
+	 */
+	public ExecutorService newExecutor(){
+		if(mode.equals("virtual")) {
+			return newVirtualThreadExecutor();
+		}
+		if(mode.equals("bounded")) {
+			return Executors.newFixedThreadPool(threads);
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * @param threads the maximum number of threads of a component with its own limit
+	 * @return an executor for the requests of a component
+	 */
+	public ExecutorService newExecutor(int threads){
+		if(mode.equals("virtual")) {
+			return newVirtualThreadExecutor();
+		}
+		return Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * @return an executor for the long-running loops of a component, such as the shell and the listeners
+	 */
+	public ExecutorService newServiceExecutor(){
+		return Executors.newCachedThreadPool();
+	}
+
+	private static boolean virtualThreadsSupported(){
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		}
+		catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Virtual threads are only available since Java 21, therefore the executor is looked up reflectively.
+	 * @return a virtual thread per task executor
+	 */
+	private static ExecutorService newVirtualThreadExecutor(){
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Virtual threads are not supported by this Java runtime.", e);
+		}
+	}
+}
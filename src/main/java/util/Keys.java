@@ -12,15 +12,43 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Please note that this class is not needed for Lab 1, but can later be
  * used in Lab 2.
  * 
  * Reads encryption keys from the file system.
+ * <p>
+ * The get methods keep every parsed key in a cache, so that handshakes and node connections do not read and parse the key files again.
+ * A cached key is checked against the modification time and size of its file at most once per second, and parsed again if the file has changed.
  */
 public final class Keys {
 
+	private static final long REVALIDATION_INTERVAL = 1000;
+	private static final ConcurrentHashMap<String, CachedKey> cache = new ConcurrentHashMap<String, CachedKey>();
+
+	private static final KeyParser PRIVATE_PEM = new KeyParser() {
+		@Override
+		public Key parse(File file) throws IOException {
+			return readPrivatePEM(file);
+		}
+	};
+
+	private static final KeyParser PUBLIC_PEM = new KeyParser() {
+		@Override
+		public Key parse(File file) throws IOException {
+			return readPublicPEM(file);
+		}
+	};
+
+	private static final KeyParser SECRET_KEY = new KeyParser() {
+		@Override
+		public Key parse(File file) throws IOException {
+			return readSecretKey(file);
+		}
+	};
+
 	static {
 		StaticPasswordReader.setPassword("alice.pem", "12345");
 		StaticPasswordReader.setPassword("bill.pem", "23456");
@@ -105,6 +133,111 @@ public final class Keys {
 		}
 	}
 
+	/**
+	 * Returns the {@link PrivateKey} of the given location from the cache, see {@link #readPrivatePEM(File)}.
+	 */
+	public static PrivateKey getPrivatePEM(File file) throws IOException {
+		return (PrivateKey) get(file, PRIVATE_PEM);
+	}
+
+	/**
+	 * Returns the {@link PublicKey} of the given location from the cache, see {@link #readPublicPEM(File)}.
+	 */
+	public static PublicKey getPublicPEM(File file) throws IOException {
+		return (PublicKey) get(file, PUBLIC_PEM);
+	}
+
+	/**
+	 * Returns the secret key of the given location from the cache, see {@link #readSecretKey(File)}.
+	 */
+	public static Key getSecretKey(File file) throws IOException {
+		return get(file, SECRET_KEY);
+	}
+
+	/**
+	 * Parses all keys of a directory into the cache: *.pub.pem files as public keys, other *.pem files as private keys and *.key files as secret keys.
+	 * Keys that can't be read, e.g. private keys without a known password, are skipped.
+	 *
+	 * @param dir
+	 *            the directory of the keys
+	 * @return the number of cached keys
+	 */
+	public static int preload(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return 0;
+		}
+		int loaded = 0;
+		for (File file : files) {
+			String name = file.getName();
+			try {
+				if (name.endsWith(".pub.pem")) {
+					getPublicPEM(file);
+				} else if (name.endsWith(".pem")) {
+					getPrivatePEM(file);
+				} else if (name.endsWith(".key")) {
+					getSecretKey(file);
+				} else {
+					continue;
+				}
+				loaded++;
+			} catch (IOException e) {
+			} catch (RuntimeException e) {
+			}
+		}
+		return loaded;
+	}
+
+	private static Key get(File file, KeyParser parser) throws IOException {
+		String path = file.getAbsolutePath();
+		CachedKey cached = cache.get(path);
+		long now = System.currentTimeMillis();
+		if (cached != null && cached.parser == parser) {
+			if (now - cached.checkedAt < REVALIDATION_INTERVAL) {
+				return cached.key;
+			}
+			if (file.lastModified() == cached.lastModified && file.length() == cached.length) {
+				cached.checkedAt = now;
+				return cached.key;
+			}
+		}
+		long lastModified = file.lastModified();
+		long length = file.length();
+		Key key;
+		try {
+			key = parser.parse(file);
+		} catch (IOException e) {
+			cache.remove(path);
+			throw e;
+		}
+		cache.put(path, new CachedKey(parser, key, lastModified, length, now));
+		return key;
+	}
+
+	private interface KeyParser {
+		Key parse(File file) throws IOException;
+	}
+
+	/**
+	 * A parsed key and the state of its file when it was parsed.
+	 */
+	private static class CachedKey {
+
+		private final KeyParser parser;
+		private final Key key;
+		private final long lastModified;
+		private final long length;
+		private volatile long checkedAt;
+
+		public CachedKey(KeyParser parser, Key key, long lastModified, long length, long checkedAt) {
+			this.parser = parser;
+			this.key = key;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.checkedAt = checkedAt;
+		}
+	}
+
 	/**
 	 * Reads the password from the standard input.
 	 */
@@ -9,6 +9,7 @@ import controller.ICloudControllerCli;
 import node.INodeCli;
 import node.Node;
 import util.Config;
+import util.SecurityUtils;
 import util.TestInputStream;
 import util.TestOutputStream;
 
@@ -16,6 +17,12 @@ import util.TestOutputStream;
  * Provides methods for starting an arbitrary amount of various components.
  */
 public class ComponentFactory {
+
+	static {
+		// the components authenticate with RSA/AES of the BouncyCastle provider
+		SecurityUtils.registerBouncyCastle();
+	}
+
 	/**
 	 * Creates and starts a new client instance using the provided
 	 * {@link Config} and I/O streams.
@@ -54,10 +61,38 @@ public class ComponentFactory {
 		 * Depending on your code you might want to modify the following lines
 		 * but you do not have to.
 		 */
-		Config config = new Config("controller");
+		return new CloudController(componentName, controllerConfig(), in, out);
+	}
+
+	/**
+	 * Creates a cloud controller which computes terms with operator
+	 * precedence and parentheses (compute.mode=precedence).
+	 */
+	public ICloudControllerCli createPrecedenceCloudController(String componentName,
+			TestInputStream in, TestOutputStream out) throws Exception {
+		Config config = controllerConfig();
+		config.setProperty("compute.mode", "precedence");
 		return new CloudController(componentName, config, in, out);
 	}
 
+	/**
+	 * Creates a cloud controller which sends every operation of a term as a
+	 * single !compute request (compute.batch=false).
+	 */
+	public ICloudControllerCli createUnbatchedCloudController(String componentName,
+			TestInputStream in, TestOutputStream out) throws Exception {
+		Config config = controllerConfig();
+		config.setProperty("compute.batch", false);
+		return new CloudController(componentName, config, in, out);
+	}
+
+	private Config controllerConfig() {
+		Config config = new Config("controller");
+		// every scenario expects the credits of user.properties
+		config.setProperty("credits.log.enabled", false);
+		return config;
+	}
+
 	/**
 	 * Creates and starts a new node instance using the provided {@link Config}
 	 * and I/O streams.
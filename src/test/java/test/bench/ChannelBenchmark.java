@@ -0,0 +1,97 @@
+package test.bench;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import channel.AESChannel;
+import channel.Base64Channel;
+import channel.Channel;
+import channel.GCMChannel;
+import channel.HmacChannel;
+
+/**
+ * Compares the throughput of a single core for the session channels: AES-CTR with a separate HMAC (which needs Base64 in between,
+ * since the HmacChannel sends text) and AES-GCM. Every message is encrypted by one channel and decrypted by another one over an in-memory transport.
+ * Usage: ChannelBenchmark [milliseconds per measurement, default 1000]
+ */
+public class ChannelBenchmark {
+
+	private static final int ROUNDS = 3;
+	private static final int[] MESSAGE_SIZES = {64, 1024, 16384};
+
+	public static void main(String[] args) throws IOException {
+		long duration = args.length>0 ? Long.parseLong(args[0]) : 1000;
+		SecureRandom random = new SecureRandom();
+		byte[] keyBytes = new byte[32];
+		byte[] hmacKeyBytes = new byte[32];
+		byte[] iv = new byte[16];
+		random.nextBytes(keyBytes);
+		random.nextBytes(hmacKeyBytes);
+		random.nextBytes(iv);
+		SecretKey key = new SecretKeySpec(keyBytes, "AES");
+		SecretKey hmacKey = new SecretKeySpec(hmacKeyBytes, "HmacSHA256");
+		for(int round = 1; round <= ROUNDS; round++){
+			for(int size : MESSAGE_SIZES){
+				byte[] message = new byte[size];
+				random.nextBytes(message);
+				MemoryChannel ctrTransport = new MemoryChannel();
+				Channel ctrSender = new AESChannel(new Base64Channel(new HmacChannel(ctrTransport, hmacKey)), key, iv);
+				Channel ctrReceiver = new AESChannel(new Base64Channel(new HmacChannel(ctrTransport, hmacKey)), key, iv);
+				MemoryChannel gcmTransport = new MemoryChannel();
+				Channel gcmSender = new GCMChannel(gcmTransport, key, iv, true);
+				Channel gcmReceiver = new GCMChannel(gcmTransport, key, iv, false);
+				System.out.println("round "+round+", "+size+" bytes: ctr+hmac "+measure(ctrSender, ctrReceiver, message, duration)
+						+" MB/s, gcm "+measure(gcmSender, gcmReceiver, message, duration)+" MB/s");
+			}
+		}
+	}
+
+	private static long measure(Channel sender, Channel receiver, byte[] message, long duration) throws IOException {
+		long bytes = 0;
+		long start = System.nanoTime();
+		long end = start + duration*1000000;
+		long now;
+		do {
+			for(int i = 0; i<16; i++){
+				sender.write(message);
+				if(receiver.read().length != message.length){
+					throw new IllegalStateException("message was not decrypted correctly");
+				}
+				bytes = bytes + message.length;
+			}
+			now = System.nanoTime();
+		}
+		while(now<end);
+		return bytes*1000/(now-start);
+	}
+
+	/**
+	 * Transport which keeps the written messages in memory until they are read.
+	 */
+	private static class MemoryChannel implements Channel {
+
+		private ArrayDeque<byte[]> messages = new ArrayDeque<byte[]>();
+
+		@Override
+		public void write(byte[] message) {
+			messages.add(message);
+		}
+
+		@Override
+		public byte[] read() throws IOException {
+			return messages.poll();
+		}
+
+		@Override
+		public void close() throws IOException {}
+
+		@Override
+		public boolean isBinary() {
+			return false;
+		}
+	}
+}
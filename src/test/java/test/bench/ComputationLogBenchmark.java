@@ -0,0 +1,60 @@
+package test.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import node.ComputationLog;
+
+/**
+ * Appends computations from several threads to a {@link ComputationLog} with a small queue, once for every log.overflow policy,
+ * and prints the time per append, the dropped and spilled records and the number of records which can be read back.
+ * Usage: ComputationLogBenchmark [number of threads, default 8] [appends per thread, default 20000]
+ */
+public class ComputationLogBenchmark {
+
+	private static final String[] OVERFLOWS = {ComputationLog.BLOCK, ComputationLog.DROP_OLDEST, ComputationLog.SPILL};
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int threads = args.length>0 ? Integer.parseInt(args[0]) : 8;
+		final int appends = args.length>1 ? Integer.parseInt(args[1]) : 20000;
+		for(String overflow : OVERFLOWS){
+			File dir = new File("build/bench/log-"+overflow);
+			delete(dir);
+			final ComputationLog log = new ComputationLog(dir.getPath(), ComputationLog.BATCH, 1 << 20, 0, 256, overflow);
+			log.open();
+			Thread writer = new Thread(log);
+			writer.start();
+			final CountDownLatch done = new CountDownLatch(threads);
+			long start = System.nanoTime();
+			for(int t = 0; t<threads; t++){
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						for(int i = 0; i<appends; i++){
+							log.append("5000 + "+i, Integer.toString(5000+i));
+						}
+						done.countDown();
+					}
+				}).start();
+			}
+			done.await();
+			long micros = (System.nanoTime()-start)/1000;
+			int read = log.readAll().size();
+			System.out.println(overflow+": "+(micros*1000/(threads*appends))+" ns per append, dropped "+log.getDropped()+", spilled "+log.getSpilled()
+					+", read "+read+" of "+(threads*appends));
+			log.close();
+			writer.join();
+		}
+	}
+
+	private static void delete(File file){
+		File[] children = file.listFiles();
+		if(children != null){
+			for(File child : children){
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
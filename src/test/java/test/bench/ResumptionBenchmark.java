@@ -0,0 +1,81 @@
+package test.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import channel.Channel;
+import channel.RSAChannel;
+import channel.SessionResumption;
+import controller.SessionTickets;
+import util.Keys;
+import util.SecurityUtils;
+
+/**
+ * Compares the work of the cloud controller for a full !authenticate handshake (decrypting the first message and sending the second one)
+ * with the work for resuming a session with a ticket (opening the ticket and deriving the session keys), on a single core.
+ * Usage: ResumptionBenchmark [number of connections, default 2000]
+ */
+public class ResumptionBenchmark {
+
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) throws IOException, GeneralSecurityException {
+		int connections = args.length>0 ? Integer.parseInt(args[0]) : 2000;
+		SecurityUtils.registerBouncyCastle();
+		File controllerKey = new File("keys/controller/controller.pem");
+		SessionTickets tickets = new SessionTickets(Keys.getPrivatePEM(controllerKey), 3600000);
+		byte[] secret = SessionResumption.newNonce();
+		String ticket = tickets.issue("alice", secret);
+		MemoryChannel clientSide = new MemoryChannel();
+		RSAChannel client = new RSAChannel(clientSide, new File("keys/client/alice.pem"));
+		client.sendFirstMessage("!authenticate alice ".getBytes(), "keys/client/controller.pub.pem");
+		byte[] firstMessage = clientSide.message;
+		for(int round = 1; round <= ROUNDS; round++){
+			long start = System.nanoTime();
+			for(int i = 0; i<connections; i++){
+				MemoryChannel serverSide = new MemoryChannel();
+				RSAChannel controller = new RSAChannel(serverSide, controllerKey);
+				String[] parts = new String(controller.decrypt(firstMessage)).split("\\s+");
+				controller.sendSecondMessage(parts[2].getBytes(), "keys/controller/alice.pub.pem");
+			}
+			long handshakes = (System.nanoTime()-start)/1000000;
+			start = System.nanoTime();
+			for(int i = 0; i<connections; i++){
+				byte[] clientNonce = SessionResumption.newNonce();
+				byte[] serverNonce = SessionResumption.newNonce();
+				SessionTickets.Ticket opened = tickets.open(ticket);
+				SessionResumption.deriveKey(opened.getSecret(), clientNonce, serverNonce);
+				SessionResumption.deriveIv(opened.getSecret(), clientNonce, serverNonce);
+			}
+			long resumptions = (System.nanoTime()-start)/1000000;
+			System.out.println("round "+round+", "+connections+" connections: handshake "+handshakes+" ms, resumption "+resumptions+" ms");
+		}
+	}
+
+	/**
+	 * Transport which keeps the last written message.
+	 */
+	private static class MemoryChannel implements Channel {
+
+		private byte[] message;
+
+		@Override
+		public void write(byte[] message) {
+			this.message = message;
+		}
+
+		@Override
+		public byte[] read() throws IOException {
+			return message;
+		}
+
+		@Override
+		public void close() throws IOException {}
+
+		@Override
+		public boolean isBinary() {
+			return true;
+		}
+	}
+}
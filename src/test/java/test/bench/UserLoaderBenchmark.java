@@ -0,0 +1,48 @@
+package test.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import controller.UserDirectory;
+import controller.UserLoader;
+
+/**
+ * Measures how long the cloud controller needs to load its users, in the format of user.properties and as csv file.
+ * Usage: UserLoaderBenchmark [number of users, default 1000000]
+ */
+public class UserLoaderBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		int nrOfUsers = args.length>0 ? Integer.parseInt(args[0]) : 1000000;
+		File properties = File.createTempFile("users", ".properties");
+		File csv = File.createTempFile("users", ".csv");
+		properties.deleteOnExit();
+		csv.deleteOnExit();
+		BufferedWriter propertiesWriter = new BufferedWriter(new FileWriter(properties));
+		BufferedWriter csvWriter = new BufferedWriter(new FileWriter(csv));
+		for(int i = 0; i<nrOfUsers; i++){
+			propertiesWriter.write("user"+i+".credits = 500\nuser"+i+".password = "+i+"\n\n");
+			csvWriter.write("user"+i+","+i+",500\n");
+		}
+		propertiesWriter.close();
+		csvWriter.close();
+		for(int round = 1; round <= ROUNDS; round++){
+			System.out.println("round "+round+": properties "+measure(properties)+" ms, csv "+measure(csv)+" ms");
+		}
+	}
+
+	private static long measure(File file) throws IOException {
+		long start = System.nanoTime();
+		UserDirectory users = new UserDirectory();
+		int loaded = UserLoader.load(file.getPath(), users);
+		long time = (System.nanoTime()-start)/1000000;
+		if(loaded != users.size()){
+			throw new IllegalStateException("loaded "+loaded+" users, but the directory contains "+users.size());
+		}
+		return time;
+	}
+}